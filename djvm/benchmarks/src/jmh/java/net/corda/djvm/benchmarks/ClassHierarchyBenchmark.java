@@ -0,0 +1,104 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.references.ClassHierarchy;
+import net.corda.djvm.references.ClassModule;
+import net.corda.djvm.references.ClassRepresentation;
+import net.corda.djvm.references.Member;
+import net.corda.djvm.references.MemberInformation;
+import net.corda.djvm.references.MemberModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+
+/**
+ * Looks up inherited members in a {@link ClassHierarchy} of synthetic classes,
+ * where each class {@code N} extends class {@code N / FAN_OUT}. Replacing a class
+ * should only discard the cached ancestors of that class and its descendants.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ClassHierarchyBenchmark {
+    private static final int FAN_OUT = 4;
+    private static final int LOOKUPS = 1024;
+    private static final String ROOT_METHOD = "method0";
+
+    @Param({ "1000", "10000", "50000" })
+    public int size;
+
+    private final MemberModule memberModule = new MemberModule();
+    private ClassHierarchy hierarchy;
+    private ClassRepresentation[] classes;
+    private int[] lookups;
+    private int next;
+
+    @Setup
+    public void setup() {
+        hierarchy = new ClassHierarchy(new ClassModule(), memberModule);
+        classes = new ClassRepresentation[size];
+        for (int i = 0; i < size; ++i) {
+            classes[i] = createClass(i);
+            hierarchy.add(classes[i]);
+        }
+
+        final SplittableRandom random = new SplittableRandom(size);
+        lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; ++i) {
+            lookups[i] = random.nextInt(size);
+        }
+    }
+
+    private ClassRepresentation createClass(int index) {
+        final String name = className(index);
+        final String superClass = index == 0 ? "java/lang/Object" : className(index / FAN_OUT);
+        final ClassRepresentation clazz = new ClassRepresentation(
+            0, 0, name, superClass, emptyList(), "", "", new LinkedHashMap<>(), new LinkedHashSet<>()
+        );
+        memberModule.addToClass(clazz, new Member(
+            0, name, "method" + index, "()V", "",
+            new LinkedHashSet<>(), emptySet(), null, emptyList(), new LinkedHashMap<>()
+        ));
+        return clazz;
+    }
+
+    private static String className(int index) {
+        return "com/example/Class" + index;
+    }
+
+    private int nextLookup() {
+        final int lookup = lookups[next];
+        next = (next + 1) & (LOOKUPS - 1);
+        return lookup;
+    }
+
+    @Benchmark
+    public MemberInformation getInheritedMember() {
+        return hierarchy.getMember(className(nextLookup()), ROOT_METHOD, "()V");
+    }
+
+    @Benchmark
+    public MemberInformation replaceThenGetInheritedMember() {
+        final int index = nextLookup();
+        hierarchy.add(classes[index]);
+        return hierarchy.getMember(className(nextLookup()), ROOT_METHOD, "()V");
+    }
+}
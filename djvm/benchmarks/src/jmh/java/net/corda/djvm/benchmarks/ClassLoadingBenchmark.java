@@ -0,0 +1,75 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.SandboxConfiguration;
+import net.corda.djvm.SandboxRuntimeContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a class from deterministic-rt.jar into the sandbox, either
+ * generating its byte-code from scratch (cold) or else fetching
+ * it from the configuration's byte-code cache (warm). Loading a
+ * class also loads any of its ancestors which are not yet loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ClassLoadingBenchmark {
+    @Param({ "java.lang.StringBuilder", "java.util.HashMap", "java.math.BigDecimal", "java.time.LocalDate" })
+    public String className;
+
+    private Sandbox sandbox;
+    private SandboxConfiguration warmConfiguration;
+
+    @Setup
+    public void setup() {
+        sandbox = new Sandbox();
+        warmConfiguration = sandbox.createRootConfiguration();
+        load(warmConfiguration, null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sandbox.close();
+    }
+
+    @Benchmark
+    public void loadCold(Blackhole blackhole) {
+        load(sandbox.createRootConfiguration(), blackhole);
+    }
+
+    @Benchmark
+    public void loadWarm(Blackhole blackhole) {
+        load(warmConfiguration, blackhole);
+    }
+
+    private void load(SandboxConfiguration configuration, Blackhole blackhole) {
+        new SandboxRuntimeContext(configuration).use(ctx -> {
+            try {
+                Object loaded = ctx.getClassLoader().loadForSandbox(className);
+                if (blackhole != null) {
+                    blackhole.consume(loaded);
+                }
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package net.corda.djvm.benchmarks;
+
+import djvm.org.objectweb.asm.ClassReader;
+import net.corda.djvm.SandboxConfiguration;
+import net.corda.djvm.analysis.AnalysisConfiguration;
+import net.corda.djvm.analysis.AnalysisContext;
+import net.corda.djvm.rewiring.ByteCode;
+import net.corda.djvm.rewiring.impl.ClassRewriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rewrites a single class from deterministic-rt.jar, without
+ * loading it. The DJVM artifact contains a relocated copy of ASM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ClassRewriterBenchmark {
+    @Param({ "java.lang.StringBuilder", "java.util.HashMap", "java.math.BigDecimal", "java.time.LocalDate" })
+    public String className;
+
+    private Sandbox sandbox;
+    private AnalysisConfiguration analysisConfiguration;
+    private ClassRewriter rewriter;
+    private CodeSource codeSource;
+    private byte[] byteCode;
+
+    @Setup
+    public void setup() throws IOException {
+        sandbox = new Sandbox();
+        final SandboxConfiguration configuration = sandbox.createRootConfiguration();
+        analysisConfiguration = configuration.getAnalysisConfiguration();
+        rewriter = new ClassRewriter(configuration, analysisConfiguration.getSupportingClassLoader());
+        codeSource = new CodeSource(Sandbox.DETERMINISTIC_RT.toUri().toURL(), (CodeSigner[]) null);
+        byteCode = sandbox.readBootstrapClass(className);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sandbox.close();
+    }
+
+    @Benchmark
+    public ByteCode rewrite() {
+        final AnalysisContext context = AnalysisContext.Companion.fromConfiguration(analysisConfiguration);
+        return rewriter.rewrite(new ClassReader(byteCode), codeSource, context);
+    }
+}
@@ -0,0 +1,74 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.SandboxRuntimeContext;
+import net.corda.djvm.SandboxThread;
+import net.corda.djvm.execution.IsolatedTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Sandboxed {@link Object#hashCode} and {@link String#intern} must both find
+ * the current {@link SandboxRuntimeContext}. A {@link SandboxThread} holds this
+ * context itself, whereas any other thread must use a {@link ThreadLocal}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ContextLookupBenchmark {
+    private static final int COUNT = 100_000;
+
+    @Param({ "ObjectHashCodes", "InternStrings" })
+    public String taskName;
+
+    private Sandbox sandbox;
+    private SandboxRuntimeContext context;
+    private Class<? extends Function<Integer, Integer>> taskClass;
+    private ExecutorService workers;
+
+    @Setup
+    public void setup() throws ClassNotFoundException {
+        sandbox = new Sandbox();
+        context = sandbox.createContext();
+        taskClass = Sandbox.taskClass(taskName);
+        workers = IsolatedTask.createWorkerPool(1);
+        Sandbox.run(context, taskClass, 1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workers.shutdownNow();
+        sandbox.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Integer threadLocal() {
+        return Sandbox.run(context, taskClass, COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Integer sandboxThread() throws ExecutionException, InterruptedException {
+        return workers.submit(() -> Sandbox.run(context, taskClass, COUNT)).get();
+    }
+}
@@ -0,0 +1,58 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.SandboxRuntimeContext;
+import net.corda.djvm.benchmarks.tasks.CostlyLoop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of each iteration of a sandboxed loop, where every
+ * jump, invocation and allocation updates the runtime cost accounter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CostAccountingBenchmark {
+    private static final int ITERATIONS = 100_000;
+
+    @Param({ "false", "true" })
+    public boolean batchCostAccounting;
+
+    private Sandbox sandbox;
+    private SandboxRuntimeContext context;
+
+    @Setup
+    public void setup() {
+        sandbox = new Sandbox(batchCostAccounting);
+        context = sandbox.createContext();
+        Sandbox.run(context, CostlyLoop.class, 1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sandbox.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public Long loop() {
+        return Sandbox.run(context, CostlyLoop.class, ITERATIONS);
+    }
+}
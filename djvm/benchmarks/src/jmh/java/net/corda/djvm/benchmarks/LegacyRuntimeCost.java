@@ -0,0 +1,42 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.costing.ThresholdViolationError;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A copy of {@link net.corda.djvm.costing.RuntimeCost} as it was before it
+ * used per-thread counters, so that {@link RuntimeCostBenchmark} can compare
+ * the two implementations. This version boxes its accumulated cost inside a
+ * {@link ThreadLocal}, and checks for uncosted threads in a concurrent set.
+ */
+final class LegacyRuntimeCost {
+    private static final Set<Thread> filteredThreads = ConcurrentHashMap.newKeySet();
+
+    private final long threshold;
+    private final Function<Thread, String> errorMessage;
+    private final ThreadLocal<Long> costValue = ThreadLocal.withInitial(() -> 0L);
+
+    LegacyRuntimeCost(long threshold, Function<Thread, String> errorMessage) {
+        this.threshold = threshold;
+        this.errorMessage = errorMessage;
+    }
+
+    long getValue() {
+        return costValue.get();
+    }
+
+    void increment() {
+        final Thread currentThread = Thread.currentThread();
+        if (filteredThreads.contains(currentThread)) {
+            return;
+        }
+        final long newValue = Math.addExact(costValue.get(), 1L);
+        costValue.set(newValue);
+        if (newValue > threshold) {
+            throw new ThresholdViolationError(errorMessage.apply(currentThread));
+        }
+    }
+}
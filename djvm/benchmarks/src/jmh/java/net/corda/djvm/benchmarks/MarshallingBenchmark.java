@@ -0,0 +1,92 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.SandboxRuntimeContext;
+import net.corda.djvm.benchmarks.tasks.Identity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Passes a value into the sandbox and back out again, so that
+ * we measure how long the task takes to marshal its input and
+ * output. Each invocation reuses a single reset of the context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class MarshallingBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({ "String", "Long", "byte[]", "String[]", "BigDecimal", "Instant", "UUID" })
+    public String inputType;
+
+    private Sandbox sandbox;
+    private SandboxRuntimeContext context;
+    private Object input;
+
+    @Setup
+    public void setup() {
+        sandbox = new Sandbox();
+        context = sandbox.createContext();
+        input = createInput(inputType);
+        Sandbox.run(context, Identity.class, input);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sandbox.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void marshal(Blackhole blackhole) {
+        context.use(ctx -> {
+            final Function<Object, Object> task = ctx.getClassLoader().createTypedTaskFactory().create(Identity.class);
+            for (int i = 0; i < BATCH_SIZE; ++i) {
+                blackhole.consume(task.apply(input));
+            }
+        });
+    }
+
+    private static Object createInput(String inputType) {
+        switch (inputType) {
+            case "String":
+                return "The quick brown fox jumps over the lazy dog";
+            case "Long":
+                return Long.MAX_VALUE;
+            case "byte[]":
+                return new byte[1024];
+            case "String[]":
+                return new String[] { "one", "two", "three", "four", "five", "six", "seven", "eight" };
+            case "BigDecimal":
+                return new BigDecimal("12345678901234567890.123456789");
+            case "Instant":
+                return Instant.ofEpochSecond(1_600_000_000L, 123_456_789L);
+            case "UUID":
+                return new UUID(0x0123_4567_89ab_cdefL, 0xfedc_ba98_7654_3210L);
+            default:
+                throw new IllegalArgumentException("Unknown input type " + inputType);
+        }
+    }
+}
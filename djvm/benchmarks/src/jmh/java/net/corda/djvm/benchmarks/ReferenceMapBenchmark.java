@@ -0,0 +1,89 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.analysis.SourceLocation;
+import net.corda.djvm.references.ClassReference;
+import net.corda.djvm.references.EntityReference;
+import net.corda.djvm.references.MemberReference;
+import net.corda.djvm.references.ReferenceMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the references that validating a jar of synthetic classes would
+ * produce, where each class's methods reference several other classes and
+ * their methods. Run with {@code -prof gc} to measure how much memory the
+ * {@link ReferenceMap} allocates for each jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ReferenceMapBenchmark {
+    private static final int METHODS_PER_CLASS = 8;
+    private static final int REFERENCES_PER_METHOD = 6;
+
+    @Param({ "10000" })
+    public int classes;
+
+    private EntityReference[] targets;
+    private SourceLocation[] locations;
+
+    @Setup
+    public void setup() {
+        final String[] classNames = new String[classes];
+        for (int i = 0; i < classes; ++i) {
+            classNames[i] = "com/example/Class" + i;
+        }
+
+        targets = new EntityReference[classes * (METHODS_PER_CLASS + 1)];
+        locations = new SourceLocation[classes * METHODS_PER_CLASS];
+        for (int i = 0; i < classes; ++i) {
+            targets[i * (METHODS_PER_CLASS + 1)] = new ClassReference(classNames[i]);
+            for (int m = 0; m < METHODS_PER_CLASS; ++m) {
+                final String methodName = "method" + m;
+                targets[i * (METHODS_PER_CLASS + 1) + m + 1] = new MemberReference(classNames[i], methodName, "()V");
+                locations[i * METHODS_PER_CLASS + m] = new SourceLocation.Builder(classNames[i])
+                    .withSourceFile("Class" + i + ".java")
+                    .withMemberName(methodName)
+                    .withDescriptor("()V")
+                    .withLineNumber(m + 1)
+                    .build();
+            }
+        }
+    }
+
+    @Benchmark
+    public ReferenceMap recordJar() {
+        final ReferenceMap references = new ReferenceMap();
+        for (int i = 0; i < locations.length; ++i) {
+            final SourceLocation location = locations[i];
+            for (int r = 1; r <= REFERENCES_PER_METHOD; ++r) {
+                references.add(targets[(i * 7 + r * 131) % targets.length], location);
+            }
+        }
+        return references;
+    }
+
+    @Benchmark
+    public int recordJarAndFollowClasses() {
+        final ReferenceMap references = recordJar();
+        int total = 0;
+        for (int i = 0; i < classes; ++i) {
+            total += references.referencesFromLocation("com/example/Class" + i, "", "").size();
+        }
+        return total;
+    }
+}
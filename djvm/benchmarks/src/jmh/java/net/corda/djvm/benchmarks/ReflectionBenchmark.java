@@ -0,0 +1,58 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.SandboxRuntimeContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Enumerates the methods of {@link java.math.BigDecimal} repeatedly inside
+ * the sandbox, which wraps each {@link java.lang.reflect.Method} that the
+ * JVM returns. Run with {@code -prof gc} to measure how much memory these
+ * wrappers allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ReflectionBenchmark {
+    @Param({ "100" })
+    public int size;
+
+    private Sandbox sandbox;
+    private SandboxRuntimeContext context;
+    private Class<? extends Function<Integer, Integer>> taskClass;
+
+    @Setup
+    public void setup() throws ClassNotFoundException {
+        sandbox = new Sandbox();
+        context = sandbox.createContext();
+        taskClass = Sandbox.taskClass("ListMethods");
+        Sandbox.run(context, taskClass, size);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sandbox.close();
+    }
+
+    @Benchmark
+    public Integer listMethods() {
+        return Sandbox.run(context, taskClass, size);
+    }
+}
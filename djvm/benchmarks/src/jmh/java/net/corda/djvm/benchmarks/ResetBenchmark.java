@@ -0,0 +1,65 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.SandboxRuntimeContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Reuses a {@link SandboxRuntimeContext}, which must reset every class
+ * that it has already loaded. {@code ImmutableStatics} can be reset
+ * from a snapshot of its static fields, whereas {@code MutableStatics}
+ * must re-run its static initializer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ResetBenchmark {
+    private static final String INPUT = "Hello World!";
+
+    @Param({ "ImmutableStatics", "MutableStatics" })
+    public String taskName;
+
+    private Sandbox sandbox;
+    private SandboxRuntimeContext context;
+    private Class<? extends Function<String, String>> taskClass;
+
+    @Setup
+    public void setup() throws ClassNotFoundException {
+        sandbox = new Sandbox();
+        context = sandbox.createContext();
+        taskClass = Sandbox.taskClass(taskName);
+        Sandbox.run(context, taskClass, INPUT);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sandbox.close();
+    }
+
+    @Benchmark
+    public void reset() {
+        context.use(ctx -> {});
+    }
+
+    @Benchmark
+    public String resetAndRun() {
+        return Sandbox.run(context, taskClass, INPUT);
+    }
+}
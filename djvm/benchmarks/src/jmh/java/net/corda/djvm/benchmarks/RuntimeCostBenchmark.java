@@ -0,0 +1,68 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.costing.RuntimeCost;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Compares {@link RuntimeCost} with the {@link LegacyRuntimeCost} that it
+ * replaced. Both increment the same two metrics in turn, which is how
+ * sandboxed code charges for its jumps and invocations. Run with
+ * {@code -prof gc} to see how much the legacy version allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class RuntimeCostBenchmark {
+    private static final int INCREMENTS = 10_000;
+    private static final Function<Thread, String> ERROR_MESSAGE = thread -> "Threshold breached by " + thread.getName();
+
+    private RuntimeCost jumpCost;
+    private RuntimeCost invocationCost;
+    private LegacyRuntimeCost legacyJumpCost;
+    private LegacyRuntimeCost legacyInvocationCost;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        jumpCost = new RuntimeCost(Long.MAX_VALUE, ERROR_MESSAGE);
+        invocationCost = new RuntimeCost(Long.MAX_VALUE, ERROR_MESSAGE);
+        legacyJumpCost = new LegacyRuntimeCost(Long.MAX_VALUE, ERROR_MESSAGE);
+        legacyInvocationCost = new LegacyRuntimeCost(Long.MAX_VALUE, ERROR_MESSAGE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INCREMENTS)
+    public long counters() {
+        for (int i = 0; i < INCREMENTS; i += 2) {
+            jumpCost.increment();
+            invocationCost.increment();
+        }
+        return jumpCost.getValue() + invocationCost.getValue();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INCREMENTS)
+    public long legacy() {
+        for (int i = 0; i < INCREMENTS; i += 2) {
+            legacyJumpCost.increment();
+            legacyInvocationCost.increment();
+        }
+        return legacyJumpCost.getValue() + legacyInvocationCost.getValue();
+    }
+}
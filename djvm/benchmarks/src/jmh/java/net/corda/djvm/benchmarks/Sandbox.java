@@ -0,0 +1,146 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.SandboxConfiguration;
+import net.corda.djvm.SandboxRuntimeContext;
+import net.corda.djvm.analysis.AnalysisConfiguration;
+import net.corda.djvm.messages.Severity;
+import net.corda.djvm.source.BootstrapClassLoader;
+import net.corda.djvm.source.UserPathSource;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
+import static net.corda.djvm.SandboxConfiguration.ALL_DEFINITION_PROVIDERS;
+import static net.corda.djvm.SandboxConfiguration.ALL_RULES;
+import static net.corda.djvm.execution.ExecutionProfile.UNLIMITED;
+
+/**
+ * Creates the sandbox configurations for the benchmarks, in the same way that
+ * the unit tests do. The build passes the locations of deterministic-rt.jar
+ * and of the benchmarks' sandbox tasks as system properties.
+ */
+final class Sandbox implements AutoCloseable {
+    static final String TASK_PACKAGE = "net.corda.djvm.benchmarks.tasks.";
+
+    static final Path DETERMINISTIC_RT = Paths.get(requireProperty("deterministic-rt.path"));
+
+    static final List<Path> SANDBOX_LIBRARIES = Arrays.stream(requireProperty("sandbox-libraries.path").split(File.pathSeparator))
+        .map(Paths::get)
+        .filter(Files::exists)
+        .collect(toList());
+
+    private final BootstrapClassLoader bootstrapClassLoader;
+    private final UserPathSource userSource;
+    private final AnalysisConfiguration rootAnalysis;
+    private final SandboxConfiguration configuration;
+
+    Sandbox(boolean batchCostAccounting) {
+        this.bootstrapClassLoader = new BootstrapClassLoader(DETERMINISTIC_RT);
+        this.userSource = new UserPathSource(SANDBOX_LIBRARIES);
+        this.rootAnalysis = AnalysisConfiguration.createRoot(
+            new UserPathSource(emptyList()),
+            emptySet(),
+            Severity.WARNING,
+            bootstrapClassLoader
+        );
+        this.configuration = createRootConfiguration().createChild(userSource, options ->
+            options.setBatchCostAccounting(batchCostAccounting)
+        );
+    }
+
+    Sandbox() {
+        this(false);
+    }
+
+    @NotNull
+    AnalysisConfiguration getRootAnalysis() {
+        return rootAnalysis;
+    }
+
+    /**
+     * Every root configuration has its own empty byte-code cache.
+     */
+    @NotNull
+    SandboxConfiguration createRootConfiguration() {
+        return SandboxConfiguration.Companion.of(
+            UNLIMITED,
+            ALL_RULES,
+            null,
+            ALL_DEFINITION_PROVIDERS,
+            rootAnalysis,
+            null
+        );
+    }
+
+    /**
+     * A child of the root configuration that can also load the sandbox tasks.
+     */
+    @NotNull
+    SandboxConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    @NotNull
+    SandboxRuntimeContext createContext() {
+        return new SandboxRuntimeContext(configuration);
+    }
+
+    @NotNull
+    byte[] readBootstrapClass(@NotNull String className) throws IOException {
+        final String resourceName = className.replace('.', '/') + ".class";
+        try (InputStream input = bootstrapClassLoader.getResourceAsStream(resourceName)) {
+            if (input == null) {
+                throw new IOException(resourceName + " not found");
+            }
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        userSource.close();
+        bootstrapClassLoader.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    static <T, R> Class<? extends Function<T, R>> taskClass(@NotNull String simpleName) throws ClassNotFoundException {
+        return (Class<? extends Function<T, R>>) Class.forName(TASK_PACKAGE + simpleName);
+    }
+
+    /**
+     * Resets the context, and then executes the task inside it.
+     */
+    static <T, R> R run(@NotNull SandboxRuntimeContext context, Class<? extends Function<T, R>> taskClass, T input) {
+        final AtomicReference<R> result = new AtomicReference<>();
+        context.use(ctx -> result.set(ctx.getClassLoader().createTypedTaskFactory().create(taskClass).apply(input)));
+        return result.get();
+    }
+
+    private static String requireProperty(String name) {
+        final String value = System.getProperty(name);
+        if (value == null) {
+            throw new IllegalStateException(name + " property not set");
+        }
+        return value;
+    }
+}
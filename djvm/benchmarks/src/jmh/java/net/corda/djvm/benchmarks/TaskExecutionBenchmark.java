@@ -0,0 +1,65 @@
+package net.corda.djvm.benchmarks;
+
+import net.corda.djvm.SandboxRuntimeContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Executes a task from end to end via a {@link net.corda.djvm.TypedTaskFactory},
+ * either inside a brand new {@link SandboxRuntimeContext} or else by resetting
+ * the same context each time. The configuration's byte-code cache is warm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TaskExecutionBenchmark {
+    @Param({ "HashCollections", "ObjectHashCodes", "InternStrings", "CostlyLoop" })
+    public String taskName;
+
+    @Param({ "1000" })
+    public int size;
+
+    private Sandbox sandbox;
+    private SandboxRuntimeContext context;
+    private Class<? extends Function<Integer, Object>> taskClass;
+
+    @Setup
+    public void setup() throws ClassNotFoundException {
+        sandbox = new Sandbox();
+        context = sandbox.createContext();
+        taskClass = Sandbox.taskClass(taskName);
+        Sandbox.run(context, taskClass, size);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sandbox.close();
+    }
+
+    @Benchmark
+    public Object newContext() {
+        return Sandbox.run(sandbox.createContext(), taskClass, size);
+    }
+
+    @Benchmark
+    public Object reusedContext() {
+        return Sandbox.run(context, taskClass, size);
+    }
+}
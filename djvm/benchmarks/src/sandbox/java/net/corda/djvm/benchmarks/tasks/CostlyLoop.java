@@ -0,0 +1,23 @@
+package net.corda.djvm.benchmarks.tasks;
+
+import java.util.function.Function;
+
+/**
+ * A loop whose jumps, invocations and allocations
+ * are all counted by the runtime cost accounter.
+ */
+public class CostlyLoop implements Function<Integer, Long> {
+    @Override
+    public Long apply(Integer iterations) {
+        long total = 0;
+        for (int i = 0; i < iterations; ++i) {
+            total += square(new int[] { i })[0];
+        }
+        return total;
+    }
+
+    private static int[] square(int[] values) {
+        values[0] *= values[0];
+        return values;
+    }
+}
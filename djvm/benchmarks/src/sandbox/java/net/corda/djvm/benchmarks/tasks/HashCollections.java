@@ -0,0 +1,33 @@
+package net.corda.djvm.benchmarks.tasks;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Fills a {@link HashMap} and a {@link HashSet} with keys that
+ * use {@link Object#hashCode}, which the sandbox must replace
+ * with deterministic values.
+ */
+public class HashCollections implements Function<Integer, Integer> {
+    @Override
+    public Integer apply(Integer size) {
+        final Map<Object, Integer> map = new HashMap<>();
+        final Set<Object> set = new HashSet<>();
+        for (int i = 0; i < size; ++i) {
+            final Object key = new Object();
+            map.put(key, i);
+            set.add(key);
+        }
+
+        int found = 0;
+        for (Object key : set) {
+            if (map.containsKey(key)) {
+                ++found;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,14 @@
+package net.corda.djvm.benchmarks.tasks;
+
+import java.util.function.Function;
+
+/**
+ * Returns its input, so that we only measure
+ * marshalling the data into and out of the sandbox.
+ */
+public class Identity implements Function<Object, Object> {
+    @Override
+    public Object apply(Object input) {
+        return input;
+    }
+}
@@ -0,0 +1,19 @@
+package net.corda.djvm.benchmarks.tasks;
+
+import java.util.function.Function;
+
+/**
+ * This class's static fields only hold primitive and immutable
+ * values, so that the sandbox can reset it from a snapshot.
+ */
+public class ImmutableStatics implements Function<String, String> {
+    private static final String PREFIX = "Immutable:";
+    private static final Long LIMIT = 1000L;
+    private static int invocations = 0;
+
+    @Override
+    public String apply(String input) {
+        ++invocations;
+        return PREFIX + input + (invocations > LIMIT ? "!" : "");
+    }
+}
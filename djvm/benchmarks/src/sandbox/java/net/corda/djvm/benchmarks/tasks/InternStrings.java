@@ -0,0 +1,22 @@
+package net.corda.djvm.benchmarks.tasks;
+
+import java.util.function.Function;
+
+/**
+ * Interns strings, which the sandbox must
+ * look up in its context's string pool.
+ */
+public class InternStrings implements Function<Integer, Integer> {
+    private static final String[] VALUES = {
+        "Alpha", "Bravo", "Charlie", "Delta", "Echo", "Foxtrot", "Golf", "Hotel"
+    };
+
+    @Override
+    public Integer apply(Integer count) {
+        int total = 0;
+        for (int i = 0; i < count; ++i) {
+            total += VALUES[i % VALUES.length].intern().length();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,26 @@
+package net.corda.djvm.benchmarks.tasks;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.function.Function;
+
+/**
+ * Enumerates the public methods of a large class over and over,
+ * in the way that a serialization library might. Sandboxed code
+ * may not invoke {@link Class#getDeclaredMethods()}, and so this
+ * task uses {@link Class#getMethods()} instead.
+ */
+public class ListMethods implements Function<Integer, Integer> {
+    @Override
+    public Integer apply(Integer size) {
+        int found = 0;
+        for (int i = 0; i < size; ++i) {
+            for (Method method : BigDecimal.class.getMethods()) {
+                if (method.getParameterCount() == 0) {
+                    ++found;
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,21 @@
+package net.corda.djvm.benchmarks.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * This class has a static field that holds a mutable value,
+ * so that the sandbox must reset it by re-running its
+ * static initializer.
+ */
+public class MutableStatics implements Function<String, String> {
+    private static final String PREFIX = "Mutable:";
+    private static final List<String> INPUTS = new ArrayList<>();
+
+    @Override
+    public String apply(String input) {
+        INPUTS.add(input);
+        return PREFIX + input + INPUTS.size();
+    }
+}
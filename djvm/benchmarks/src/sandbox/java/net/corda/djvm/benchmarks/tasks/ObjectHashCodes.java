@@ -0,0 +1,18 @@
+package net.corda.djvm.benchmarks.tasks;
+
+import java.util.function.Function;
+
+/**
+ * Computes the {@link Object#hashCode} of new objects,
+ * each of which the sandbox must look up in its context.
+ */
+public class ObjectHashCodes implements Function<Integer, Integer> {
+    @Override
+    public Integer apply(Integer count) {
+        int total = 0;
+        for (int i = 0; i < count; ++i) {
+            total += new Object().hashCode();
+        }
+        return total;
+    }
+}
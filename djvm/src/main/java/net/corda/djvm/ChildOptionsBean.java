@@ -1,14 +1,18 @@
 package net.corda.djvm;
 
 import net.corda.djvm.analysis.AnalysisOptions;
+import net.corda.djvm.execution.StackTraceMode;
 import net.corda.djvm.rewiring.ByteCode;
 import net.corda.djvm.rewiring.ByteCodeKey;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Internal bean to "downcast" the {@link Consumer<AnalysisOptions>}
@@ -19,6 +23,9 @@ import java.util.function.Consumer;
 class ChildOptionsBean implements ConfigurationOptions, Consumer<AnalysisOptions> {
     private final Consumer<? super ChildOptions> configure;
     private ConcurrentMap<ByteCodeKey, ByteCode> externalCache;
+    private final Map<Class<?>, Function<Object, Object>> inputMarshallers = new LinkedHashMap<>();
+    private StackTraceMode stackTraceMode;
+    private Boolean batchCostAccounting;
 
     ChildOptionsBean(Consumer<? super ChildOptions> configure) {
         this.configure = configure;
@@ -43,6 +50,35 @@ class ChildOptionsBean implements ConfigurationOptions, Consumer<AnalysisOptions
         return externalCache;
     }
 
+    @Override
+    public <T> void setInputMarshaller(Class<T> type, Function<? super T, ?> marshaller) {
+        @SuppressWarnings("unchecked")
+        final Function<Object, Object> objectMarshaller = (Function<Object, Object>) marshaller;
+        inputMarshallers.put(type, objectMarshaller);
+    }
+
+    public Map<Class<?>, Function<Object, Object>> getInputMarshallers() {
+        return inputMarshallers;
+    }
+
+    @Override
+    public void setStackTraceMode(StackTraceMode stackTraceMode) {
+        this.stackTraceMode = stackTraceMode;
+    }
+
+    public StackTraceMode getStackTraceMode() {
+        return stackTraceMode;
+    }
+
+    @Override
+    public void setBatchCostAccounting(boolean batchCostAccounting) {
+        this.batchCostAccounting = batchCostAccounting;
+    }
+
+    public Boolean getBatchCostAccounting() {
+        return batchCostAccounting;
+    }
+
     private static class Handler implements InvocationHandler {
         private final ConfigurationOptions configuration;
         private final AnalysisOptions analysis;
@@ -6,7 +6,7 @@ import java.lang.invoke.MethodHandle;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
 
 import static java.util.Collections.unmodifiableList;
 import static java.util.stream.Collectors.toList;
@@ -18,9 +18,10 @@ final class ClassResetContext {
     private final Resettables setupPhase;
     private final Resettables runPhase;
     private final Map<String, Object> internStrings;
-    private final Map<Integer, Integer> hashCodes;
-    private Function<? super Integer, ? extends Integer> nextHashOffset;
+    private final IntIntHashMap hashCodes;
+    private IntUnaryOperator nextHashOffset;
     private int objectCounter;
+    private long sideEffectCounter;
 
     private volatile Resettables current;
 
@@ -28,14 +29,15 @@ final class ClassResetContext {
         resetter = new SandboxClassResetter();
         setupPhase = new Resettables();
         runPhase = new Resettables();
-        hashCodes = new HashMap<>();
+        hashCodes = new IntIntHashMap();
         internStrings = new HashMap<>();
         nextHashOffset = this::decrementHashOffset;
         current = setupPhase;
     }
 
-    void add(Class<?> resetClass, MethodHandle resetMethod) {
-        current.add(new Resettable(resetClass, resetMethod));
+    void add(Class<?> resetClass, MethodHandle resetMethod, boolean canSnapshot) {
+        ++sideEffectCounter;
+        current.add(new Resettable(resetClass, resetMethod, canSnapshot));
     }
 
     /**
@@ -62,7 +64,7 @@ final class ClassResetContext {
         objectCounter = 0;
         hashCodes.clear();
         internStrings.clear();
-        resetter.reset(current = setupPhase);
+        resetter.reset(current = setupPhase, this::getSideEffectCounter);
     }
 
     synchronized void ready() throws Throwable {
@@ -71,13 +73,22 @@ final class ClassResetContext {
         }
         nextHashOffset = this::incrementHashOffset;
         objectCounter = 0;
-        resetter.reset(current = runPhase);
+        resetter.reset(current = runPhase, this::getSideEffectCounter);
+    }
+
+    /**
+     * Counts every change to this context's state that a class's
+     * reset method could make, apart from assigning its static fields.
+     */
+    private long getSideEffectCounter() {
+        return sideEffectCounter;
     }
 
     @NotNull
     Object intern(@NotNull String key, @NotNull Object value) {
         Object mapValue = internStrings.get(key);
         if (mapValue == null) {
+            ++sideEffectCounter;
             internStrings.put(key, value);
             mapValue = value;
         }
@@ -90,10 +101,12 @@ final class ClassResetContext {
     }
 
     private int incrementHashOffset(int key) {
+        ++sideEffectCounter;
         return ++objectCounter + MAGIC_HASH_OFFSET;
     }
 
     private int decrementHashOffset(int key) {
+        ++sideEffectCounter;
         return --objectCounter + MAGIC_HASH_OFFSET;
     }
 
@@ -1,10 +1,33 @@
 package net.corda.djvm;
 
+import net.corda.djvm.execution.StackTraceMode;
 import net.corda.djvm.rewiring.ByteCode;
 import net.corda.djvm.rewiring.ByteCodeKey;
 
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 public interface ConfigurationOptions {
     void setExternalCache(ConcurrentMap<ByteCodeKey, ByteCode> externalCache);
+
+    /**
+     * Marshal objects of exactly this type into the sandbox using this function,
+     * which will be invoked from inside the sandbox. This only applies to types
+     * that the DJVM would otherwise pass into the sandbox unchanged.
+     */
+    <T> void setInputMarshaller(Class<T> type, Function<? super T, ?> marshaller);
+
+    /**
+     * When sandboxed exceptions should capture their stack traces.
+     * The default is to inherit this from the parent configuration.
+     */
+    void setStackTraceMode(StackTraceMode stackTraceMode);
+
+    /**
+     * Whether to record consecutive jumps, invocations and throws with a single
+     * call to the runtime cost accounter. This only affects the byte-code that
+     * the new configuration generates, and never changes the recorded costs.
+     * The default is to inherit this from the parent configuration.
+     */
+    void setBatchCostAccounting(boolean batchCostAccounting);
 }
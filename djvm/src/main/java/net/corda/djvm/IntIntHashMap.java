@@ -0,0 +1,114 @@
+package net.corda.djvm;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An open-addressing hash table that maps primitive {@code int} keys to
+ * primitive {@code int} values, so that looking up or inserting a mapping
+ * allocates nothing. The table uses linear probing, and keeps the zero key
+ * outside the table so that a zero slot can mean "empty".
+ */
+final class IntIntHashMap {
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * Don't keep a table bigger than this after it has been cleared.
+     */
+    private static final int RETAINED_CAPACITY = 1 << 16;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int threshold;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    IntIntHashMap() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        // Keep the load factor at 0.75.
+        threshold = capacity - (capacity >>> 2);
+    }
+
+    private static int mix(int key) {
+        final int hash = key * 0x9e37_79b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Equivalent to {@link java.util.Map#computeIfAbsent}, except that
+     * the mapping function cannot decline to create a value.
+     */
+    int computeIfAbsent(int key, @NotNull IntUnaryOperator mapping) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                zeroValue = mapping.applyAsInt(key);
+                hasZeroKey = true;
+                ++size;
+            }
+            return zeroValue;
+        }
+
+        int index = mix(key) & mask;
+        int existing;
+        while ((existing = keys[index]) != 0) {
+            if (existing == key) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+
+        final int value = mapping.applyAsInt(key);
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold) {
+            rehash();
+        }
+        return value;
+    }
+
+    private void rehash() {
+        final int[] oldKeys = keys;
+        final int[] oldValues = values;
+        if (oldKeys.length == MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Too many hash codes");
+        }
+        allocate(oldKeys.length << 1);
+
+        for (int i = 0; i < oldKeys.length; ++i) {
+            final int key = oldKeys[i];
+            if (key != 0) {
+                int index = mix(key) & mask;
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    void clear() {
+        if (keys.length > RETAINED_CAPACITY) {
+            allocate(DEFAULT_CAPACITY);
+        } else if (size > 0) {
+            Arrays.fill(keys, 0);
+        }
+        hasZeroKey = false;
+        size = 0;
+    }
+}
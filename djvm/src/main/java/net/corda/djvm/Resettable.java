@@ -13,7 +13,7 @@ import java.util.Map;
 import static java.security.AccessController.doPrivileged;
 
 final class Resettable {
-    private static final Unsafe unsafe;
+    static final Unsafe unsafe;
 
     static {
         try {
@@ -31,17 +31,40 @@ final class Resettable {
     private final Class<?> resetClass;
     private final MethodHandle resetMethod;
     private final Map<String, FieldData> fields;
+    private boolean canSnapshot;
+    private StaticSnapshot snapshot;
 
-    Resettable(Class<?> resetClass, MethodHandle resetMethod) {
+    Resettable(Class<?> resetClass, MethodHandle resetMethod, boolean canSnapshot) {
         this.resetClass = resetClass;
         this.resetMethod = resetMethod;
         this.fields = new HashMap<>();
+        this.canSnapshot = canSnapshot;
     }
 
     MethodHandle getResetMethod() {
         return resetMethod;
     }
 
+    boolean canSnapshot() {
+        return canSnapshot;
+    }
+
+    StaticSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Record the values of our class's static fields, now that its
+     * reset method has assigned them. We only try this once.
+     * @param isReplayable Whether the reset method had any side effects.
+     */
+    void takeSnapshot(boolean isReplayable) {
+        canSnapshot = false;
+        if (isReplayable) {
+            snapshot = doPrivileged((PrivilegedAction<StaticSnapshot>) () -> StaticSnapshot.capture(resetClass));
+        }
+    }
+
     void reset(Object value, String fieldName) {
         fields.computeIfAbsent(fieldName, this::createFieldData).setValue(value);
     }
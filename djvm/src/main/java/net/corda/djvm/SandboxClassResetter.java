@@ -7,6 +7,7 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodType;
 import java.lang.invoke.MutableCallSite;
 import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
 
 /**
  * Classes that contain static fields need to have these fields
@@ -14,6 +15,12 @@ import java.util.function.BiConsumer;
  * rewritten these classes to contain a special reset method that
  * will set all of their static fields to zero before repeating
  * the work of their {@literal <clinit>} functions.
+ *
+ * However, some of these reset methods only assign values to their
+ * class's own static fields. We can restore these fields from a
+ * {@link StaticSnapshot} instead, provided that replaying the reset
+ * method once has shown that it does not intern any strings, create
+ * any hash codes or initialise any other classes.
  */
 final class SandboxClassResetter {
     private final CallSite resetSite;
@@ -24,10 +31,20 @@ final class SandboxClassResetter {
         resetHandle = resetSite.dynamicInvoker();
     }
 
-    void reset(@NotNull Resettables resettables) throws Throwable {
+    void reset(@NotNull Resettables resettables, @NotNull LongSupplier sideEffects) throws Throwable {
         for (Resettable resettable : resettables.getResettables()) {
+            StaticSnapshot snapshot = resettable.getSnapshot();
+            if (snapshot != null) {
+                snapshot.restore();
+                continue;
+            }
+
+            long sideEffectCount = sideEffects.getAsLong();
             resetSite.setTarget(resettable.getResetMethod());
             resetHandle.invokeExact((BiConsumer<Object, String>)resettable::reset);
+            if (resettable.canSnapshot()) {
+                resettable.takeSnapshot(sideEffects.getAsLong() == sideEffectCount);
+            }
         }
     }
 }
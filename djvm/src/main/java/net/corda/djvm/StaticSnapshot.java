@@ -0,0 +1,148 @@
+package net.corda.djvm;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.reflect.Modifier.isFinal;
+import static java.lang.reflect.Modifier.isStatic;
+import static net.corda.djvm.code.impl.Types.STRING_POOL_NAME;
+
+/**
+ * The values of a class's static fields, as assigned by its reset method.
+ * These values are held in flat arrays so that we can restore them all
+ * without invoking any method handles. We only snapshot a class whose
+ * static reference fields all contain either null or a Class, because
+ * sandboxed code could otherwise modify these values in-place. Nor can
+ * we restore sandbox strings or boxed primitives, because each run
+ * interns its strings afresh. A string from an earlier run would then
+ * no longer be identical to the same literal. The exception is the
+ * class's pool of sandbox strings, which we just empty again.
+ */
+final class StaticSnapshot {
+    private final Object[] bases;
+    private final long[] offsets;
+    private final char[] types;
+    private final long[] primitives;
+    private final Object[] references;
+
+    private StaticSnapshot(int size) {
+        bases = new Object[size];
+        offsets = new long[size];
+        types = new char[size];
+        primitives = new long[size];
+        references = new Object[size];
+    }
+
+    /**
+     * Records the current values of the static fields that a reset method
+     * assigns, i.e. every non-final field and every final reference field.
+     * @return The snapshot, or {@code null} if any field contains a value that we cannot restore.
+     */
+    @Nullable
+    static StaticSnapshot capture(@NotNull Class<?> resetClass) {
+        final Unsafe unsafe = Resettable.unsafe;
+        final List<Field> fields = new ArrayList<>();
+        for (Field field : resetClass.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (isStatic(modifiers) && !(isFinal(modifiers) && field.getType().isPrimitive())) {
+                fields.add(field);
+            }
+        }
+
+        final StaticSnapshot snapshot = new StaticSnapshot(fields.size());
+        for (int i = 0; i < fields.size(); ++i) {
+            final Field field = fields.get(i);
+            final Object base = unsafe.staticFieldBase(field);
+            final long offset = unsafe.staticFieldOffset(field);
+            final Class<?> type = field.getType();
+            snapshot.bases[i] = base;
+            snapshot.offsets[i] = offset;
+            if (type == long.class) {
+                snapshot.types[i] = 'J';
+                snapshot.primitives[i] = unsafe.getLong(base, offset);
+            } else if (type == double.class) {
+                snapshot.types[i] = 'D';
+                snapshot.primitives[i] = Double.doubleToRawLongBits(unsafe.getDouble(base, offset));
+            } else if (type == float.class) {
+                snapshot.types[i] = 'F';
+                snapshot.primitives[i] = Float.floatToRawIntBits(unsafe.getFloat(base, offset));
+            } else if (type == int.class) {
+                snapshot.types[i] = 'I';
+                snapshot.primitives[i] = unsafe.getInt(base, offset);
+            } else if (type == short.class) {
+                snapshot.types[i] = 'S';
+                snapshot.primitives[i] = unsafe.getShort(base, offset);
+            } else if (type == char.class) {
+                snapshot.types[i] = 'C';
+                snapshot.primitives[i] = unsafe.getChar(base, offset);
+            } else if (type == byte.class) {
+                snapshot.types[i] = 'B';
+                snapshot.primitives[i] = unsafe.getByte(base, offset);
+            } else if (type == boolean.class) {
+                snapshot.types[i] = 'Z';
+                snapshot.primitives[i] = unsafe.getBoolean(base, offset) ? 1 : 0;
+            } else if (field.getName().equals(STRING_POOL_NAME)) {
+                snapshot.types[i] = 'P';
+                snapshot.references[i] = unsafe.getObject(base, offset);
+            } else {
+                final Object value = unsafe.getObject(base, offset);
+                if (value != null && !(value instanceof Class)) {
+                    return null;
+                }
+                snapshot.types[i] = 'L';
+                snapshot.references[i] = value;
+            }
+        }
+        return snapshot;
+    }
+
+    void restore() {
+        final Unsafe unsafe = Resettable.unsafe;
+        for (int i = 0; i < types.length; ++i) {
+            final Object base = bases[i];
+            final long offset = offsets[i];
+            switch (types[i]) {
+                case 'J':
+                    unsafe.putLong(base, offset, primitives[i]);
+                    break;
+                case 'D':
+                    unsafe.putDouble(base, offset, Double.longBitsToDouble(primitives[i]));
+                    break;
+                case 'F':
+                    unsafe.putFloat(base, offset, Float.intBitsToFloat((int) primitives[i]));
+                    break;
+                case 'I':
+                    unsafe.putInt(base, offset, (int) primitives[i]);
+                    break;
+                case 'S':
+                    unsafe.putShort(base, offset, (short) primitives[i]);
+                    break;
+                case 'C':
+                    unsafe.putChar(base, offset, (char) primitives[i]);
+                    break;
+                case 'B':
+                    unsafe.putByte(base, offset, (byte) primitives[i]);
+                    break;
+                case 'Z':
+                    unsafe.putBoolean(base, offset, primitives[i] != 0);
+                    break;
+                case 'P':
+                    final Object[] pool = (Object[]) references[i];
+                    if (pool != null) {
+                        Arrays.fill(pool, null);
+                    }
+                    unsafe.putObject(base, offset, pool);
+                    break;
+                default:
+                    unsafe.putObject(base, offset, references[i]);
+                    break;
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassReader;
 
 import java.security.CodeSource;
+import java.util.function.Supplier;
 
 import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
 
@@ -18,14 +19,25 @@ import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
  * Happily and deliberately package private!
  */
 final class Accessor {
+    private final Supplier<ClassAndMemberVisitor> analyzerFactory;
     private final ClassAndMemberVisitor analyzer;
     private final ClassRewriter rewriter;
 
-    Accessor(@NotNull ClassAndMemberVisitor analyzer, @NotNull ClassRewriter rewriter) {
-        this.analyzer = analyzer;
+    Accessor(@NotNull Supplier<ClassAndMemberVisitor> analyzerFactory, @NotNull ClassRewriter rewriter) {
+        this.analyzerFactory = analyzerFactory;
+        this.analyzer = analyzerFactory.get();
         this.rewriter = rewriter;
     }
 
+    /**
+     * The analyzer is stateful, and so each thread
+     * needs its own {@link Accessor} to analyze with.
+     */
+    @NotNull
+    Accessor copy() {
+        return new Accessor(analyzerFactory, rewriter);
+    }
+
     @NotNull
     ByteCode rewrite(@NotNull ClassReader reader, @NotNull CodeSource codeSource, @NotNull AnalysisContext context) {
         return rewriter.rewrite(reader, codeSource, context);
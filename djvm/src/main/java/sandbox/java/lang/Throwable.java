@@ -1,5 +1,6 @@
 package sandbox.java.lang;
 
+import net.corda.djvm.execution.StackTraceMode;
 import org.jetbrains.annotations.NotNull;
 import sandbox.TaskTypes;
 
@@ -18,6 +19,13 @@ public class Throwable extends Object implements Serializable {
     private String message;
     private Throwable cause;
     private StackTraceElement[] stackTrace;
+
+    /*
+     * A JVM exception whose stack trace we have not converted yet.
+     * The DJVM only creates these when stackTraceMode is LAZY.
+     */
+    private java.lang.Throwable pendingTrace;
+    private boolean pendingFromConstructor;
     private List<Throwable> suppressedExceptions = DEFAULT_SUPPRESSED;
 
     public Throwable() {
@@ -90,10 +98,20 @@ public class Throwable extends Object implements Serializable {
     }
 
     public StackTraceElement[] getStackTrace() {
-        return (stackTrace == NO_STACK_TRACE) ? stackTrace : stackTrace.clone();
+        final StackTraceElement[] trace = getOurStackTrace();
+        return (trace == NO_STACK_TRACE) ? trace : trace.clone();
     }
 
-    public void setStackTrace(@NotNull StackTraceElement[] stackTrace) {
+    private synchronized StackTraceElement[] getOurStackTrace() {
+        if (pendingTrace != null) {
+            final java.lang.StackTraceElement[] elements = pendingTrace.getStackTrace();
+            stackTrace = pendingFromConstructor ? toDJVMStackTrace(elements) : toDJVMStackTrace(elements, 0);
+            pendingTrace = null;
+        }
+        return stackTrace;
+    }
+
+    public synchronized void setStackTrace(@NotNull StackTraceElement[] stackTrace) {
         StackTraceElement[] traceCopy = stackTrace.clone();
 
         for (int i = 0; i < traceCopy.length; ++i) {
@@ -103,38 +121,73 @@ public class Throwable extends Object implements Serializable {
         }
 
         this.stackTrace = traceCopy;
+        this.pendingTrace = null;
+    }
+
+    /**
+     * The DJVM invokes this when a {@link java.lang.Throwable} from outside
+     * the sandbox is copied into this exception. The sandbox only sees the
+     * part of this stack trace that is below the sandbox's entry point.
+     */
+    synchronized void setJvmStackTrace(@NotNull java.lang.Throwable t) {
+        final StackTraceMode mode = DJVM.getStackTraceMode();
+        if (mode == StackTraceMode.NONE) {
+            stackTrace = NO_STACK_TRACE;
+            pendingTrace = null;
+        } else if (mode == StackTraceMode.LAZY) {
+            pendingTrace = t;
+            pendingFromConstructor = false;
+        } else {
+            stackTrace = toDJVMStackTrace(t.getStackTrace(), 0);
+            pendingTrace = null;
+        }
     }
 
     @SuppressWarnings("UnusedReturnValue")
     public Throwable fillInStackTrace() {
-        if (stackTrace == null) {
-            /*
-             * We have been invoked from within this exception's constructor.
-             * Work our way up the stack trace until we find this constructor,
-             * and then find out who actually invoked it. This is where our
-             * sandboxed stack trace will start from.
-             *
-             * Our stack trace will end at the point where we entered the sandbox.
-             */
-            final java.lang.StackTraceElement[] elements = new java.lang.Throwable().getStackTrace();
-            final java.lang.String exceptionName = getClass().getName();
-            int startIdx = 1;
-            while (startIdx < elements.length && !isConstructorFor(elements[startIdx], exceptionName)) {
-                ++startIdx;
-            }
-            while (startIdx < elements.length && isConstructorFor(elements[startIdx], exceptionName)) {
-                ++startIdx;
+        if (stackTrace == null && pendingTrace == null) {
+            final StackTraceMode mode = DJVM.getStackTraceMode();
+            if (mode == StackTraceMode.NONE) {
+                stackTrace = NO_STACK_TRACE;
+            } else if (mode == StackTraceMode.LAZY) {
+                pendingTrace = new java.lang.Throwable();
+                pendingFromConstructor = true;
+            } else {
+                stackTrace = toDJVMStackTrace(new java.lang.Throwable().getStackTrace());
             }
-
-            int endIdx = startIdx;
-            while (endIdx < elements.length && !TaskTypes.isEntryPoint(elements[endIdx])) {
-                ++endIdx;
-            }
-            stackTrace = (startIdx == elements.length) ? NO_STACK_TRACE : DJVM.copyToDJVM(elements, startIdx, endIdx);
         }
         return this;
     }
 
+    /*
+     * We have been invoked from within this exception's constructor.
+     * Work our way up the stack trace until we find this constructor,
+     * and then find out who actually invoked it. This is where our
+     * sandboxed stack trace will start from.
+     */
+    private StackTraceElement[] toDJVMStackTrace(@NotNull java.lang.StackTraceElement[] elements) {
+        final java.lang.String exceptionName = getClass().getName();
+        int startIdx = 1;
+        while (startIdx < elements.length && !isConstructorFor(elements[startIdx], exceptionName)) {
+            ++startIdx;
+        }
+        while (startIdx < elements.length && isConstructorFor(elements[startIdx], exceptionName)) {
+            ++startIdx;
+        }
+        return (startIdx == elements.length) ? NO_STACK_TRACE : toDJVMStackTrace(elements, startIdx);
+    }
+
+    /*
+     * Our stack trace will end at the point where we entered the sandbox.
+     */
+    private static StackTraceElement[] toDJVMStackTrace(@NotNull java.lang.StackTraceElement[] elements, int startIdx) {
+        int endIdx = startIdx;
+        while (endIdx < elements.length && !TaskTypes.isEntryPoint(elements[endIdx])) {
+            ++endIdx;
+        }
+        return DJVM.copyToDJVM(elements, startIdx, endIdx);
+    }
+
     public final Throwable[] getSuppressed() {
         return (suppressedExceptions == null || suppressedExceptions == DEFAULT_SUPPRESSED)
                 ? EMPTY_THROWABLE_ARRAY : suppressedExceptions.toArray(EMPTY_THROWABLE_ARRAY);
@@ -11,15 +11,16 @@ import java.lang.reflect.InvocationTargetException;
 @SuppressWarnings("unused")
 public final class Constructor<T> extends Executable {
     private final java.lang.reflect.Constructor<T> constructor;
-    private final String name;
-    private final String stringValue;
-    private final String genericString;
+
+    /*
+     * Most callers never ask for these, so create them on demand.
+     */
+    private String name;
+    private String stringValue;
+    private String genericString;
 
     Constructor(@NotNull java.lang.reflect.Constructor<T> constructor) {
         this.constructor = constructor;
-        this.name = String.toDJVM(constructor.getName());
-        this.stringValue = String.toDJVM(constructor.toString());
-        this.genericString = String.toDJVM(constructor.toGenericString());
     }
 
     @Override
@@ -34,7 +35,7 @@ public final class Constructor<T> extends Executable {
         } else if (!(other instanceof Constructor)) {
             return false;
         } else {
-            return constructor.equals(other);
+            return constructor.equals(((Constructor<?>) other).constructor);
         }
     }
 
@@ -46,6 +47,9 @@ public final class Constructor<T> extends Executable {
     @Override
     @NotNull
     public String toDJVMString() {
+        if (stringValue == null) {
+            stringValue = String.toDJVM(constructor.toString());
+        }
         return stringValue;
     }
 
@@ -57,11 +61,17 @@ public final class Constructor<T> extends Executable {
 
     @Override
     public String getName() {
+        if (name == null) {
+            name = String.toDJVM(constructor.getName());
+        }
         return name;
     }
 
     @Override
     public String toGenericString() {
+        if (genericString == null) {
+            genericString = String.toDJVM(constructor.toGenericString());
+        }
         return genericString;
     }
 
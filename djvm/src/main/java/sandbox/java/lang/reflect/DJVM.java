@@ -28,9 +28,21 @@ public final class DJVM {
         );
     }
 
+    /**
+     * Sandboxed code may enumerate the same members many times over,
+     * e.g. when a serialization library inspects a class. So reuse the
+     * wrapper that we created for each underlying JVM member.
+     */
+    private static final Map<java.lang.reflect.Constructor<?>, Constructor<?>> constructors = new HashMap<>();
+    private static final Map<java.lang.reflect.Method, Method> methods = new HashMap<>();
+    private static final Map<java.lang.reflect.Field, Field> fields = new HashMap<>();
+
     @SuppressWarnings("unused")
     private static void reset(BiConsumer<Object, String> resetter) {
         resetter.accept(new HashMap<>(), "hashCodes");
+        resetter.accept(new HashMap<>(), "constructors");
+        resetter.accept(new HashMap<>(), "methods");
+        resetter.accept(new HashMap<>(), "fields");
         reflectionCounter = 0;
     }
 
@@ -39,7 +51,16 @@ public final class DJVM {
     }
 
     public static <T> Constructor<T> toDJVM(java.lang.reflect.Constructor<T> constructor) {
-        return constructor != null ? new Constructor<>(constructor) : null;
+        if (constructor == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Constructor<T> result = (Constructor<T>) constructors.get(constructor);
+        if (result == null) {
+            result = new Constructor<>(constructor);
+            constructors.put(constructor, result);
+        }
+        return result;
     }
 
     @NotNull
@@ -52,7 +73,15 @@ public final class DJVM {
     }
 
     public static Method toDJVM(java.lang.reflect.Method method) {
-        return method != null ? new Method(method) : null;
+        if (method == null) {
+            return null;
+        }
+        Method result = methods.get(method);
+        if (result == null) {
+            result = new Method(method);
+            methods.put(method, result);
+        }
+        return result;
     }
 
     @NotNull
@@ -65,7 +94,15 @@ public final class DJVM {
     }
 
     public static Field toDJVM(java.lang.reflect.Field field) {
-        return field != null ? new Field(field) : null;
+        if (field == null) {
+            return null;
+        }
+        Field result = fields.get(field);
+        if (result == null) {
+            result = new Field(field);
+            fields.put(field, result);
+        }
+        return result;
     }
 
     @NotNull
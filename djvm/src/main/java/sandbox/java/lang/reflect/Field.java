@@ -7,15 +7,16 @@ import sandbox.java.lang.annotation.Annotation;
 @SuppressWarnings("unused")
 public final class Field extends AccessibleObject implements Member {
     private final java.lang.reflect.Field field;
-    private final String name;
-    private final String stringValue;
-    private final String genericString;
+
+    /*
+     * Most callers never ask for these, so create them on demand.
+     */
+    private String name;
+    private String stringValue;
+    private String genericString;
 
     Field(@NotNull java.lang.reflect.Field field) {
         this.field = field;
-        this.name = String.toDJVM(field.getName());
-        this.stringValue = String.toDJVM(field.toString());
-        this.genericString = String.toDJVM(field.toGenericString());
     }
 
     @Override
@@ -25,7 +26,7 @@ public final class Field extends AccessibleObject implements Member {
         } else if (!(other instanceof Field)) {
             return false;
         } else {
-            return field.equals(other);
+            return field.equals(((Field) other).field);
         }
     }
 
@@ -37,10 +38,16 @@ public final class Field extends AccessibleObject implements Member {
     @Override
     @NotNull
     public String toDJVMString() {
+        if (stringValue == null) {
+            stringValue = String.toDJVM(field.toString());
+        }
         return stringValue;
     }
 
     public String toGenericString() {
+        if (genericString == null) {
+            genericString = String.toDJVM(field.toGenericString());
+        }
         return genericString;
     }
 
@@ -57,6 +64,9 @@ public final class Field extends AccessibleObject implements Member {
 
     @Override
     public String getName() {
+        if (name == null) {
+            name = String.toDJVM(field.getName());
+        }
         return name;
     }
 
@@ -12,24 +12,20 @@ public final class Method extends Executable {
     private static final java.lang.String TO_STRING = "toString";
 
     private final java.lang.reflect.Method method;
-    private final String name;
-    private final String stringValue;
-    private final String genericString;
+
+    /*
+     * Most callers never ask for these, so create them on demand.
+     */
+    private String name;
+    private String stringValue;
+    private String genericString;
 
     Method(@NotNull java.lang.reflect.Method method) {
         this.method = method;
-        if (isToDJVMString(method)) {
-            name = intern(TO_STRING);
-            genericString = stringValue = intern(STRING_VALUE);
-        } else {
-            name = String.toDJVM(method.getName());
-            stringValue = String.toDJVM(method.toString());
-            genericString = String.toDJVM(method.toGenericString());
-        }
     }
 
-    private static boolean isToDJVMString(@NotNull java.lang.reflect.Method method) {
-        return "toDJVMString".equals(method.getName()) && method.getParameters().length == 0;
+    private boolean isToDJVMString() {
+        return "toDJVMString".equals(method.getName()) && method.getParameterCount() == 0;
     }
 
     @Override
@@ -44,7 +40,7 @@ public final class Method extends Executable {
         } else if (!(other instanceof Method)) {
             return false;
         } else {
-            return method.equals(other);
+            return method.equals(((Method) other).method);
         }
     }
 
@@ -56,6 +52,9 @@ public final class Method extends Executable {
     @Override
     @NotNull
     public String toDJVMString() {
+        if (stringValue == null) {
+            stringValue = isToDJVMString() ? intern(STRING_VALUE) : String.toDJVM(method.toString());
+        }
         return stringValue;
     }
 
@@ -67,11 +66,17 @@ public final class Method extends Executable {
 
     @Override
     public String getName() {
+        if (name == null) {
+            name = isToDJVMString() ? intern(TO_STRING) : String.toDJVM(method.getName());
+        }
         return name;
     }
 
     @Override
     public String toGenericString() {
+        if (genericString == null) {
+            genericString = isToDJVMString() ? intern(STRING_VALUE) : String.toDJVM(method.toGenericString());
+        }
         return genericString;
     }
 
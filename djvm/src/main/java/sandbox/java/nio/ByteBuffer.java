@@ -4,7 +4,8 @@ import sandbox.java.lang.Comparable;
 
 /**
  * This is a dummy class that implements just enough of {@link java.nio.ByteBuffer}
- * to allow us to compile {@link sandbox.java.util.zip.CRC32}.
+ * to allow us to compile {@link sandbox.java.util.zip.CRC32} and
+ * {@link sandbox.java.lang.DJVM}.
  */
 public abstract class ByteBuffer extends Buffer implements Comparable<ByteBuffer> {
     private static final String UNSUPPORTED = "Dummy class - not implemented";
@@ -24,4 +25,16 @@ public abstract class ByteBuffer extends Buffer implements Comparable<ByteBuffer
     public ByteBuffer get(byte[] target) {
         throw new UnsupportedOperationException(UNSUPPORTED);
     }
+
+    public static ByteBuffer wrap(byte[] array, int offset, int length) {
+        throw new UnsupportedOperationException(UNSUPPORTED);
+    }
+
+    public abstract ByteBuffer slice();
+
+    public abstract ByteBuffer asReadOnlyBuffer();
+
+    public final ByteBuffer order(ByteOrder order) {
+        throw new UnsupportedOperationException(UNSUPPORTED);
+    }
 }
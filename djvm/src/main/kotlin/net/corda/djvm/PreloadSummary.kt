@@ -0,0 +1,18 @@
+package net.corda.djvm
+
+import java.net.URL
+
+/**
+ * Statistics for a jar whose classes have been preloaded into a [SandboxConfiguration].
+ *
+ * @property location The location of the preloaded jar.
+ * @property classCount The number of classes inside the jar.
+ * @property referenceCount The number of other classes that also needed loading.
+ * @property elapsedNanos How long it took to preload this jar.
+ */
+data class PreloadSummary(
+    val location: URL,
+    val classCount: Int,
+    val referenceCount: Int,
+    val elapsedNanos: Long
+)
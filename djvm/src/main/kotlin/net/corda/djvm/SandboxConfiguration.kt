@@ -9,8 +9,10 @@ import net.corda.djvm.code.impl.THROWABLE_NAME
 import net.corda.djvm.code.impl.asPackagePath
 import net.corda.djvm.execution.ExecutionProfile
 import net.corda.djvm.execution.IsolatedTask
+import net.corda.djvm.execution.StackTraceMode
 import net.corda.djvm.rewiring.ByteCodeCache
 import net.corda.djvm.rewiring.ExternalCache
+import net.corda.djvm.rewiring.SandboxClassLoader
 import net.corda.djvm.rules.Rule
 import net.corda.djvm.rules.implementation.*
 import net.corda.djvm.rules.implementation.instrumentation.*
@@ -19,6 +21,8 @@ import net.corda.djvm.utilities.loggerFor
 import java.io.IOException
 import java.net.URL
 import java.util.Collections.unmodifiableList
+import java.util.Collections.unmodifiableMap
+import java.util.concurrent.ExecutionException
 import java.util.function.Consumer
 import java.util.function.Function
 import java.util.zip.ZipInputStream
@@ -34,6 +38,10 @@ import java.util.zip.ZipInputStream
  * @property analysisConfiguration The configuration used in the analysis of classes.
  * @property byteCodeCache A cache of bytecode generated using these rules, emitters and definition providers.
  * @property externalCache An externally provided cache for newly-generated byte-code.
+ * @property batchCostAccounting Whether to record consecutive jumps, invocations
+ * and throws with a single call to the runtime cost accounter.
+ * @property inputMarshallers Functions that marshal objects of these exact types into the sandbox.
+ * @property stackTraceMode When sandboxed exceptions should capture their stack traces.
  */
 class SandboxConfiguration private constructor(
     val rules: List<Rule>,
@@ -42,7 +50,10 @@ class SandboxConfiguration private constructor(
     val executionProfile: ExecutionProfile?,
     val analysisConfiguration: AnalysisConfiguration,
     val byteCodeCache: ByteCodeCache,
-    val externalCache: ExternalCache?
+    val externalCache: ExternalCache?,
+    val batchCostAccounting: Boolean,
+    val inputMarshallers: Map<Class<*>, Function<Any, Any?>>,
+    val stackTraceMode: StackTraceMode
 ) {
     /**
      * Creates a child [SandboxConfiguration] with this instance as its parent.
@@ -65,7 +76,10 @@ class SandboxConfiguration private constructor(
                 build()
             },
             byteCodeCache = ByteCodeCache(byteCodeCache),
-            externalCache = childOptions.externalCache
+            externalCache = childOptions.externalCache,
+            batchCostAccounting = childOptions.batchCostAccounting ?: batchCostAccounting,
+            inputMarshallers = unmodifiableMap(inputMarshallers + childOptions.inputMarshallers),
+            stackTraceMode = childOptions.stackTraceMode ?: stackTraceMode
         )
     }
 
@@ -83,41 +97,150 @@ class SandboxConfiguration private constructor(
      */
     @Throws(ClassNotFoundException::class, IOException::class)
     fun preload() {
+        preload(1)
+    }
+
+    /**
+     * Generate sandbox byte-code for every class inside selected source JARs,
+     * using up to [parallelism] threads for each jar. Each thread loads its share
+     * of the jar's classes into its own [SandboxRuntimeContext], and then merges
+     * the byte-code it generated into this configuration's [ByteCodeCache].
+     * These source jars must each contain a META-INF/DJVM-preload entry.
+     *
+     * @param parallelism The maximum number of threads to use.
+     * @return A [PreloadSummary] for each jar, in the order that they were preloaded.
+     */
+    @Throws(ClassNotFoundException::class, IOException::class)
+    fun preload(parallelism: Int): List<PreloadSummary> {
+        require(parallelism > 0) { "Parallelism must be positive" }
         val preloadURLs = getPreloadURLs()
-        if (preloadURLs.isNotEmpty()) {
-            IsolatedTask(PRELOAD_THREAD_PREFIX, this).run<Any>(Function { classLoader ->
-                val knownReferences = HashSet(INITIAL_CLASSES)
+        return when {
+            preloadURLs.isEmpty() -> emptyList()
+            parallelism == 1 -> preloadSerially(preloadURLs)
+            else -> preloadInParallel(preloadURLs, parallelism)
+        }
+    }
+
+    private fun preloadSerially(preloadURLs: Set<URL>): List<PreloadSummary> {
+        val summaries = ArrayList<PreloadSummary>(preloadURLs.size)
+        IsolatedTask(PRELOAD_THREAD_PREFIX, this).run<Any>(Function { classLoader ->
+            val knownReferences = HashSet(INITIAL_CLASSES)
+
+            /**
+             * Generate sandbox byte-code for all of these jars.
+             */
+            for (preloadURL in preloadURLs) {
+                log.info("Preloading classes from {}", preloadURL.path)
+                val startTime = System.nanoTime()
+                val initialReferences = knownReferences.size
+                var classCount = 0
+                ZipInputStream(preloadURL.openStream().buffered()).use {
+                    while (true) {
+                        val entryName = (it.nextEntry ?: break).name
+                        if (entryName.endsWith(CLASS_SUFFIX) && !entryName.startsWith("META-INF/")) {
+                            val internalClassName = entryName.dropLast(CLASS_SUFFIX.length)
+                            knownReferences.add(internalClassName)
+                            ++classCount
+
+                            val className = internalClassName.asPackagePath
+                            classLoader.toSandboxClass(className)
+                            log.debug("- loaded {}", className)
+
+                            /**
+                             * Now ensure that we've also loaded every other
+                             * class that this class has referenced.
+                             */
+                            classLoader.resolveReferences(knownReferences)
+                        }
+                    }
+                }
+                summaries.add(PreloadSummary(
+                    location = preloadURL,
+                    classCount = classCount,
+                    referenceCount = (knownReferences.size - initialReferences - classCount).coerceAtLeast(0),
+                    elapsedNanos = System.nanoTime() - startTime
+                ))
+            }
+
+            log.info("Preloaded {} classes into sandbox.",
+                      knownReferences.size - INITIAL_CLASSES.size)
+        })
+        return summaries
+    }
+
+    private fun preloadInParallel(preloadURLs: Set<URL>, parallelism: Int): List<PreloadSummary> {
+        val workers = IsolatedTask.createWorkerPool(parallelism)
+        try {
+            return preloadURLs.map { preloadURL ->
+                log.info("Preloading classes from {} using {} threads", preloadURL.path, parallelism)
+                val startTime = System.nanoTime()
+                val classNames = getPreloadClassNames(preloadURL)
 
                 /**
-                 * Generate sandbox byte-code for all of these jars.
+                 * Each batch of classes is loaded by a different [SandboxClassLoader],
+                 * and so classes referenced from more than one batch will be rewritten
+                 * more than once. However, only the first copy of each class is kept
+                 * when the [SandboxClassLoader]s merge their byte-code into the
+                 * [ByteCodeCache], and each class loader still delegates to its parent
+                 * as usual when it defines a class.
                  */
-                for (preloadURL in preloadURLs) {
-                    log.info("Preloading classes from {}", preloadURL.path)
-                    ZipInputStream(preloadURL.openStream().buffered()).use {
-                        while (true) {
-                            val entryName = (it.nextEntry ?: break).name
-                            if (entryName.endsWith(CLASS_SUFFIX) && !entryName.startsWith("META-INF/")) {
-                                val internalClassName = entryName.dropLast(CLASS_SUFFIX.length)
-                                knownReferences.add(internalClassName)
-
-                                val className = internalClassName.asPackagePath
-                                classLoader.toSandboxClass(className)
-                                log.debug("- loaded {}", className)
-
-                                /**
-                                 * Now ensure that we've also loaded every other
-                                 * class that this class has referenced.
-                                 */
-                                classLoader.resolveReferences(knownReferences)
-                            }
-                        }
+                val batchSize = (classNames.size + parallelism - 1) / parallelism
+                val tasks = classNames.chunked(maxOf(batchSize, 1)).map { batch ->
+                    IsolatedTask(PRELOAD_THREAD_PREFIX, this).submit(workers, preloadBatch(batch))
+                }
+                val references = tasks.flatMapTo(HashSet()) { task ->
+                    val result = try {
+                        task.get()
+                    } catch (e: ExecutionException) {
+                        throw e.cause ?: e
                     }
+                    result.exception?.also { throw it }
+                    result.output!!
                 }
+                val summary = PreloadSummary(
+                    location = preloadURL,
+                    classCount = classNames.size,
+                    referenceCount = (references.size - INITIAL_CLASSES.size - classNames.size).coerceAtLeast(0),
+                    elapsedNanos = System.nanoTime() - startTime
+                )
+                log.info("Preloaded {} classes from {}.", summary.classCount + summary.referenceCount, preloadURL.path)
+                summary
+            }
+        } finally {
+            workers.shutdownNow()
+        }
+    }
+
+    /**
+     * Generate sandbox byte-code for a batch of classes, along with everything
+     * that these classes reference. The [IsolatedTask] stores this byte-code
+     * inside the [ByteCodeCache] when its [SandboxRuntimeContext] closes.
+     */
+    private fun preloadBatch(internalClassNames: List<String>): Function<SandboxClassLoader, Set<String>?> {
+        return Function { classLoader ->
+            val knownReferences = HashSet(INITIAL_CLASSES)
+            knownReferences.addAll(internalClassNames)
+            for (internalClassName in internalClassNames) {
+                val className = internalClassName.asPackagePath
+                classLoader.toSandboxClass(className)
+                log.debug("- loaded {}", className)
+                classLoader.resolveReferences(knownReferences)
+            }
+            knownReferences
+        }
+    }
 
-                log.info("Preloaded {} classes into sandbox.",
-                          knownReferences.size - INITIAL_CLASSES.size)
-            })
+    private fun getPreloadClassNames(preloadURL: URL): List<String> {
+        val classNames = ArrayList<String>()
+        ZipInputStream(preloadURL.openStream().buffered()).use {
+            while (true) {
+                val entryName = (it.nextEntry ?: break).name
+                if (entryName.endsWith(CLASS_SUFFIX) && !entryName.startsWith("META-INF/")) {
+                    classNames.add(entryName.dropLast(CLASS_SUFFIX.length))
+                }
+            }
         }
+        return classNames
     }
 
     private fun getPreloadURLs(): Set<URL> {
@@ -211,7 +334,10 @@ class SandboxConfiguration private constructor(
                 definitionProviders = definitionProviders,
                 analysisConfiguration = analysisConfiguration,
                 byteCodeCache = ByteCodeCache.createFor(analysisConfiguration),
-                externalCache = externalCache
+                externalCache = externalCache,
+                batchCostAccounting = false,
+                inputMarshallers = emptyMap(),
+                stackTraceMode = StackTraceMode.EAGER
         )
 
         /**
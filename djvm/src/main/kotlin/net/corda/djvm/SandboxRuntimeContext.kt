@@ -7,6 +7,7 @@ import net.corda.djvm.rewiring.SandboxClassLoader
 import java.lang.invoke.MethodHandle
 import java.security.AccessController.doPrivileged
 import java.security.PrivilegedAction
+import java.util.function.BiConsumer
 import java.util.function.Consumer
 
 /**
@@ -31,8 +32,8 @@ class SandboxRuntimeContext(val configuration: SandboxConfiguration) {
     private val classResetContext = ClassResetContext()
 
     @CordaInternal
-    internal fun addToReset(clazz: Class<*>, resetMethod: MethodHandle) {
-        classResetContext.add(clazz, resetMethod)
+    internal fun addToReset(clazz: Class<*>, resetMethod: MethodHandle, canSnapshot: Boolean) {
+        classResetContext.add(clazz, resetMethod, canSnapshot)
     }
 
     internal val currentResetView: ClassResetContext.View
@@ -60,7 +61,25 @@ class SandboxRuntimeContext(val configuration: SandboxConfiguration) {
             uncosted(Runnable(classResetContext::reset))
             action.accept(this)
         } finally {
-            threadLocalContext.remove()
+            clearInstance()
+            doPrivileged(PrivilegedAction(classLoader::close))
+        }
+    }
+
+    /**
+     * Run an action for each of the [inputs] within the provided sandbox context.
+     * The sandbox is reset before each input, exactly as [use] would reset it,
+     * but is only bound to this thread and closed once for the whole batch.
+     */
+    fun <T> useEach(inputs: Iterable<T>, action: BiConsumer<SandboxRuntimeContext, in T>) {
+        instance = this
+        try {
+            for (input in inputs) {
+                uncosted(Runnable(classResetContext::reset))
+                action.accept(this, input)
+            }
+        } finally {
+            clearInstance()
             doPrivileged(PrivilegedAction(classLoader::close))
         }
     }
@@ -70,13 +89,35 @@ class SandboxRuntimeContext(val configuration: SandboxConfiguration) {
 
         /**
          * When called from within a sandbox, this returns the context for the current sandbox thread.
+         * A [SandboxThread] holds its context itself, and so does not need the [ThreadLocal].
          */
         @JvmStatic
         var instance: SandboxRuntimeContext
-            get() = threadLocalContext.get()
-                ?: throw IllegalStateException("SandboxRuntimeContext has not been initialized before use")
+            get() {
+                val currentThread = Thread.currentThread()
+                val context = if (currentThread is SandboxThread) {
+                    currentThread.context
+                } else {
+                    threadLocalContext.get()
+                }
+                return context ?: throw IllegalStateException("SandboxRuntimeContext has not been initialized before use")
+            }
             private set(value) {
-                threadLocalContext.set(value)
+                val currentThread = Thread.currentThread()
+                if (currentThread is SandboxThread) {
+                    currentThread.context = value
+                } else {
+                    threadLocalContext.set(value)
+                }
             }
+
+        private fun clearInstance() {
+            val currentThread = Thread.currentThread()
+            if (currentThread is SandboxThread) {
+                currentThread.context = null
+            } else {
+                threadLocalContext.remove()
+            }
+        }
     }
 }
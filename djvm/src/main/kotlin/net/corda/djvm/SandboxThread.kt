@@ -0,0 +1,11 @@
+package net.corda.djvm
+
+/**
+ * A thread that runs sandboxed code. Each [SandboxRuntimeContext] binds itself
+ * to its [SandboxThread] directly, so that code running inside the sandbox can
+ * find its context without looking it up in a [ThreadLocal]. Contexts used by
+ * any other thread still fall back to a [ThreadLocal].
+ */
+class SandboxThread(target: Runnable, name: String) : Thread(target, name) {
+    internal var context: SandboxRuntimeContext? = null
+}
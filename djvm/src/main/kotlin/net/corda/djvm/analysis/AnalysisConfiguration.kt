@@ -13,6 +13,7 @@ import net.corda.djvm.analysis.impl.generateJavaResourceBundleMethods
 import net.corda.djvm.analysis.impl.generateJavaTimeMethods
 import net.corda.djvm.analysis.impl.generateJavaUuidMethods
 import net.corda.djvm.code.impl.CLASS_CONSTRUCTOR_NAME
+import net.corda.djvm.code.impl.CommonSuperClassCache
 import net.corda.djvm.code.impl.DJVM_EXCEPTION_NAME
 import net.corda.djvm.code.impl.DJVM_NAME
 import net.corda.djvm.code.impl.RUNTIME_ACCOUNTER_NAME
@@ -75,6 +76,12 @@ class AnalysisConfiguration private constructor(
     val memberModule: MemberModule
 ) {
 
+    /**
+     * The common superclasses already computed for the classes
+     * that [supportingClassLoader] provides.
+     */
+    internal val commonSuperClasses = CommonSuperClassCache()
+
     fun formatFor(member: MemberInformation): String = MemberFormatter(classModule, memberModule).format(member)
 
     /**
@@ -225,9 +232,11 @@ class AnalysisConfiguration private constructor(
             "sandbox/java/lang/DJVMDeclaredAnnotationsByTypeAction",
             "sandbox/java/lang/DJVMEnumAction",
             DJVM_EXCEPTION_NAME,
+            "sandbox/java/lang/DJVMMarshallerTable",
             "sandbox/java/lang/DJVMNoResource",
             "sandbox/java/lang/DJVMResourceKey",
             "sandbox/java/lang/DJVMSystemResourceAction",
+            "sandbox/java/lang/DJVMThrowableFactory",
             "sandbox/java/lang/DJVMThrowableWrapper",
             SANDBOX_OBJECT_NAME,
             "sandbox/java/lang/String\$InitAction",
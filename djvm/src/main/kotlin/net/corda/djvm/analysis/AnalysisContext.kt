@@ -4,7 +4,10 @@ import net.corda.djvm.code.impl.asPackagePath
 import net.corda.djvm.messages.MessageCollection
 import net.corda.djvm.references.ClassHierarchy
 import net.corda.djvm.references.EntityReference
+import net.corda.djvm.references.MemberInformation
 import net.corda.djvm.references.ReferenceMap
+import java.util.concurrent.ConcurrentSkipListMap
+import java.util.concurrent.ConcurrentSkipListSet
 
 /**
  * The context in which one or more classes are analysed.
@@ -13,20 +16,28 @@ import net.corda.djvm.references.ReferenceMap
  * @property classes List of class definitions that have been analyzed.
  * @property references A collection of all referenced members found during analysis together with the locations from
  * where each member has been accessed or invoked.
+ * @property isConcurrent Whether this context can be shared by threads analysing classes in parallel.
  */
 class AnalysisContext private constructor(
         val messages: MessageCollection,
         val classes: ClassHierarchy,
-        val references: ReferenceMap
+        val references: ReferenceMap,
+        val isConcurrent: Boolean
 ) {
 
-    private val origins = mutableMapOf<String, MutableSet<EntityReference>>()
+    private val origins: MutableMap<String, MutableSet<EntityReference>> = if (isConcurrent) {
+        ConcurrentSkipListMap()
+    } else {
+        mutableMapOf()
+    }
 
     /**
      * Record a class origin in the current analysis context.
      */
     fun recordClassOrigin(name: String, origin: EntityReference) {
-        origins.getOrPut(name.asPackagePath) { mutableSetOf() }.add(origin)
+        origins.computeIfAbsent(name.asPackagePath) {
+            if (isConcurrent) ConcurrentSkipListSet(originOrder) else mutableSetOf()
+        }.add(origin)
     }
 
     /**
@@ -37,6 +48,15 @@ class AnalysisContext private constructor(
 
     companion object {
 
+        /**
+         * Sorts the origins of each class in a concurrent context, because
+         * the threads can record them in any order.
+         */
+        private val originOrder: Comparator<EntityReference> = compareBy<EntityReference> { it.className }
+            .thenBy { (it as? MemberInformation)?.memberName ?: "" }
+            .thenBy { (it as? MemberInformation)?.descriptor ?: "" }
+            .thenBy { it.javaClass.name }
+
         /**
          * Create a new analysis context from provided configuration.
          */
@@ -44,7 +64,23 @@ class AnalysisContext private constructor(
             return AnalysisContext(
                     MessageCollection(configuration.minimumSeverityLevel, configuration.prefixFilters),
                     ClassHierarchy(configuration.classModule, configuration.memberModule),
-                    ReferenceMap()
+                    ReferenceMap(),
+                    isConcurrent = false
+            )
+        }
+
+        /**
+         * Create a new analysis context from provided configuration, which
+         * several threads can update at once. Its classes and class origins
+         * are kept sorted by name, so that its contents do not depend upon
+         * the order in which these threads analysed each class.
+         */
+        fun concurrentFromConfiguration(configuration: AnalysisConfiguration): AnalysisContext {
+            return AnalysisContext(
+                    MessageCollection(configuration.minimumSeverityLevel, configuration.prefixFilters, isConcurrent = true),
+                    ClassHierarchy(configuration.classModule, configuration.memberModule, isConcurrent = true),
+                    ReferenceMap(isConcurrent = true),
+                    isConcurrent = true
             )
         }
 
@@ -2,6 +2,8 @@ package net.corda.djvm.analysis
 
 import net.corda.djvm.code.impl.asPackagePath
 import net.corda.djvm.code.impl.asResourcePath
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
 
 /**
  * Functionality for resolving the class name of a sandboxable class.
@@ -28,20 +30,55 @@ class ClassResolver(
     private val sandboxPrefix: String
 ) {
 
+    /**
+     * Names and descriptors that we have already resolved or reversed, and their
+     * results. These are safe to share between threads.
+     */
+    private val resolvedNames = ConcurrentHashMap<String, String>()
+    private val reversedNames = ConcurrentHashMap<String, String>()
+    private val resolvedDescriptors = ConcurrentHashMap<String, String>()
+    private val hits = LongAdder()
+    private val misses = LongAdder()
+
+    /**
+     * The number of names and descriptors that we have found in our caches.
+     */
+    val cacheHits: Long get() = hits.sum()
+
+    /**
+     * The number of names and descriptors that we have had to resolve or reverse.
+     */
+    val cacheMisses: Long get() = misses.sum()
+
     /**
      * Resolve the class name from a fully qualified name.
      */
     fun resolve(name: String): String {
-        return when {
-            name.startsWith('[') ->
-                if (name.endsWith(';') ) {
-                    complexArrayTypeRegex.replace(name) {
-                        "${it.groupValues[1]}L${resolveName(it.groupValues[2])};"
-                    }
-                } else {
-                    name
-                }
-            else -> resolveName(name)
+        return remember(resolvedNames, name, ::resolveUncached)
+    }
+
+    private fun resolveUncached(name: String): String {
+        return if (name.startsWith('[')) {
+            resolveArray(name)
+        } else {
+            resolveName(name)
+        }
+    }
+
+    /**
+     * Resolve the element type of an array of objects.
+     * Arrays of primitive types are left unchanged.
+     */
+    private fun resolveArray(name: String): String {
+        var dimensions = 1
+        while (dimensions < name.length && name[dimensions] == '[') {
+            ++dimensions
+        }
+        return if (dimensions < name.length && name[dimensions] == 'L' && name.endsWith(';')) {
+            val elementName = name.substring(dimensions + 1, name.length - 1)
+            "${name.substring(0, dimensions)}L${resolveName(elementName)};"
+        } else {
+            name
         }
     }
 
@@ -56,25 +93,28 @@ class ClassResolver(
      * Derive descriptor by resolving all referenced class names.
      */
     fun resolveDescriptor(descriptor: String): String {
-        val outputDescriptor = StringBuilder()
-        var longName = StringBuilder()
-        var isProcessingLongName = false
-        loop@ for (char in descriptor) {
-            when {
-                char != ';' && isProcessingLongName -> {
-                    longName.append(char)
-                    continue@loop
-                }
-                char == 'L' -> {
-                    isProcessingLongName = true
-                    longName = StringBuilder()
-                }
-                char == ';' -> {
-                    outputDescriptor.append(resolve(longName.toString()))
-                    isProcessingLongName = false
-                }
+        return remember(resolvedDescriptors, descriptor, ::resolveDescriptorUncached)
+    }
+
+    private fun resolveDescriptorUncached(descriptor: String): String {
+        var index = descriptor.indexOf('L')
+        if (index == -1) {
+            return descriptor
+        }
+        val outputDescriptor = StringBuilder(descriptor.length + sandboxPrefix.length)
+        var start = 0
+        while (index != -1) {
+            outputDescriptor.append(descriptor, start, index + 1)
+            val end = descriptor.indexOf(';', index + 1)
+            if (end == -1) {
+                break
             }
-            outputDescriptor.append(char)
+            outputDescriptor.append(resolve(descriptor.substring(index + 1, end))).append(';')
+            start = end + 1
+            index = descriptor.indexOf('L', start)
+        }
+        if (index == -1) {
+            outputDescriptor.append(descriptor, start, descriptor.length)
         }
         return outputDescriptor.toString()
     }
@@ -84,6 +124,10 @@ class ClassResolver(
      * Does not work for array classes.
      */
     fun reverse(resolvedClassName: String): String {
+        return remember(reversedNames, resolvedClassName, ::reverseUncached)
+    }
+
+    private fun reverseUncached(resolvedClassName: String): String {
         return if (isTemplateClass(resolvedClassName)) {
             resolvedClassName
         } else {
@@ -152,8 +196,24 @@ class ClassResolver(
      */
     fun isWhitelistedClass(internalName: String): Boolean = whitelist.matches(internalName)
 
-    companion object {
-        private val complexArrayTypeRegex = "^(\\[+)L(.*);\$".toRegex()
+    private inline fun remember(cache: MutableMap<String, String>, key: String, compute: (String) -> String): String {
+        val cached = cache[key]
+        if (cached != null) {
+            hits.increment()
+            return cached
+        }
+        misses.increment()
+        val result = compute(key)
+        if (cache.size < MAX_CACHED_NAMES) {
+            cache[key] = result
+        }
+        return result
     }
 
+    private companion object {
+        /**
+         * Stop remembering new names once we have seen this many.
+         */
+        private const val MAX_CACHED_NAMES = 1 shl 16
+    }
 }
\ No newline at end of file
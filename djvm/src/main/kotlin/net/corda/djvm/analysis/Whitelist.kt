@@ -4,6 +4,7 @@ import java.io.InputStream
 import java.io.PushbackInputStream
 import java.nio.file.Files
 import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
 import java.util.zip.GZIPInputStream
 
 /**
@@ -21,9 +22,16 @@ open class Whitelist private constructor(
 ) {
 
     /**
-     * Set of seen names that matched with the whitelist.
+     * The regular expressions, indexed by the literal prefix
+     * that any name must have before they can match it.
      */
-    private val seenNames = mutableSetOf<String>()
+    private val prefixTree = PrefixNode.build(entries)
+
+    /**
+     * Names that we have already matched against the whitelist,
+     * and their results. This is safe to share between threads.
+     */
+    private val seenNames = ConcurrentHashMap<String, Boolean>()
 
     /**
      * Check if name falls within the namespace of the whitelist.
@@ -36,20 +44,18 @@ open class Whitelist private constructor(
      * Check if a name is covered by the whitelist.
      */
     fun matches(name: String): Boolean {
-        if (name in seenNames) {
+        if (name in textEntries) {
             return true
         }
-        return when {
-            name in textEntries -> {
-                seenNames.add(name)
-                true
-            }
-            entries.any { it matches name } -> {
-                seenNames.add(name)
-                true
-            }
-            else -> false
+        val seen = seenNames[name]
+        if (seen != null) {
+            return seen
+        }
+        val result = prefixTree.matches(name)
+        if (seenNames.size < MAX_SEEN_NAMES) {
+            seenNames[name] = result
         }
+        return result
     }
 
     /**
@@ -94,7 +100,103 @@ open class Whitelist private constructor(
     val items: Set<String>
         get() = textEntries + entries.map(Regex::pattern)
 
+    /**
+     * A trie node for the literal characters at the start of each regular
+     * expression. Matching a name only needs to try those expressions whose
+     * literal prefix is also a prefix of the name.
+     */
+    private class PrefixNode {
+        private val children = mutableMapOf<Char, PrefixNode>()
+        private val regexes = mutableListOf<Regex>()
+
+        fun matches(name: String): Boolean {
+            var node: PrefixNode = this
+            var index = 0
+            while (true) {
+                if (node.regexes.any { it matches name }) {
+                    return true
+                }
+                if (index == name.length) {
+                    return false
+                }
+                node = node.children[name[index++]] ?: return false
+            }
+        }
+
+        companion object {
+            fun build(entries: Set<Regex>): PrefixNode {
+                val root = PrefixNode()
+                for (entry in entries) {
+                    var node = root
+                    val prefix = if (entry.options.isEmpty()) literalPrefixOf(entry.pattern) else ""
+                    for (ch in prefix) {
+                        node = node.children.getOrPut(ch, ::PrefixNode)
+                    }
+                    node.regexes.add(entry)
+                }
+                return root
+            }
+
+            /**
+             * Determine which characters any match for this pattern
+             * must start with. This is conservative, and so returns
+             * an empty prefix for any pattern it doesn't understand.
+             */
+            private fun literalPrefixOf(pattern: String): String {
+                if (hasTopLevelAlternative(pattern)) {
+                    return ""
+                }
+                val prefix = StringBuilder()
+                var index = if (pattern.startsWith('^')) 1 else 0
+                scan@ while (index < pattern.length) {
+                    val ch = pattern[index]
+                    val literal = when {
+                        ch == '\\' && index + 1 < pattern.length && !pattern[index + 1].isLetterOrDigit() -> {
+                            ++index
+                            pattern[index]
+                        }
+                        ch in REGEX_META_CHARS -> break@scan
+                        else -> ch
+                    }
+                    ++index
+                    // The next character may make this one optional.
+                    if (index < pattern.length && pattern[index] in REGEX_QUANTIFIERS) {
+                        break
+                    }
+                    prefix.append(literal)
+                }
+                return prefix.toString()
+            }
+
+            private fun hasTopLevelAlternative(pattern: String): Boolean {
+                var depth = 0
+                var inClass = false
+                var index = 0
+                while (index < pattern.length) {
+                    when (pattern[index]) {
+                        '\\' -> ++index
+                        '[' -> inClass = true
+                        ']' -> inClass = false
+                        '(' -> if (!inClass) ++depth
+                        ')' -> if (!inClass) --depth
+                        '|' -> if (!inClass && depth == 0) return true
+                    }
+                    ++index
+                }
+                return false
+            }
+
+            private const val REGEX_META_CHARS = "\\.[]{}()*+?|^\$"
+            private const val REGEX_QUANTIFIERS = "?*+{"
+        }
+    }
+
     companion object {
+        /**
+         * Stop remembering new names once we have seen this many.
+         */
+        private const val MAX_SEEN_NAMES = 1 shl 16
+
         private val minimumSet = setOf(
             "^java/lang/AutoCloseable(\\..*)?\$".toRegex(),
             "^java/lang/Class(\\..*)?\$".toRegex(),
@@ -18,6 +18,7 @@ import net.corda.djvm.utilities.loggerFor
 import net.corda.djvm.utilities.processEntriesOfType
 import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.FieldVisitor
+import org.objectweb.asm.Handle
 import org.objectweb.asm.Label
 import org.objectweb.asm.MethodVisitor
 import org.objectweb.asm.Opcodes.ACC_ABSTRACT
@@ -29,15 +30,23 @@ import org.objectweb.asm.Opcodes.ACC_STRICT
 import org.objectweb.asm.Opcodes.ACC_SYNTHETIC
 import org.objectweb.asm.Opcodes.ACONST_NULL
 import org.objectweb.asm.Opcodes.ALOAD
+import org.objectweb.asm.Opcodes.ANEWARRAY
+import org.objectweb.asm.Opcodes.ATHROW
 import org.objectweb.asm.Opcodes.DCONST_0
 import org.objectweb.asm.Opcodes.FCONST_0
+import org.objectweb.asm.Opcodes.GETSTATIC
+import org.objectweb.asm.Opcodes.IASTORE
 import org.objectweb.asm.Opcodes.ICONST_0
 import org.objectweb.asm.Opcodes.INVOKEINTERFACE
 import org.objectweb.asm.Opcodes.LCONST_0
+import org.objectweb.asm.Opcodes.MONITORENTER
+import org.objectweb.asm.Opcodes.MONITOREXIT
+import org.objectweb.asm.Opcodes.NEWARRAY
 import org.objectweb.asm.Opcodes.POP
 import org.objectweb.asm.Opcodes.POP2
 import org.objectweb.asm.Opcodes.PUTSTATIC
 import org.objectweb.asm.Opcodes.RETURN
+import org.objectweb.asm.Opcodes.SASTORE
 import org.objectweb.asm.Opcodes.SWAP
 import org.objectweb.asm.commons.Remapper
 import org.objectweb.asm.tree.MethodNode
@@ -52,17 +61,26 @@ import java.util.function.Consumer
  * @param remapper [Remapper] for transforming classes into sandbox classes.
  * @param definitionProviders A set of providers used to update the name or meta-data of classes and members.
  * @param emitters A set of code emitters used to modify and instrument method bodies.
+ * @param batchCosts Whether to combine the runtime cost accounting for each basic block, c.f. [CostBatcher].
+ * @param stringConstants The string constants from the class's constant pool, which can be
+ * pre-allocated slots in a pool of sandbox strings.
  */
 class ClassMutator(
     classVisitor: ClassVisitor,
     configuration: AnalysisConfiguration,
     private val remapper: Remapper,
     private val definitionProviders: List<DefinitionProvider>,
-    emitters: List<Emitter>
-) : ClassAndMemberVisitor(classVisitor, configuration, remapper) {
+    emitters: List<Emitter>,
+    batchCosts: Boolean = false,
+    private val stringConstants: List<String> = emptyList()
+) : ClassAndMemberVisitor(classVisitor, configuration, remapper, batchCosts) {
     override fun specialise(cv: ClassVisitor, args: Array<out Any?>): ClassVisitor {
+        val batchCosts = args[1] as Boolean
         return SandboxClassRemapper(
-            ExceptionRemapper(SandboxStitcher(ResetVisitor(cv), configuration), configuration.syntheticResolver),
+            ExceptionRemapper(
+                SandboxStitcher(ResetVisitor(if (batchCosts) CostBatcher(cv) else cv), configuration),
+                configuration.syntheticResolver
+            ),
             args[0] as Remapper,
             configuration
         )
@@ -95,6 +113,7 @@ class ClassMutator(
         override fun visitMethod(access: Int, name: String, descriptor: String, signature: String?, exceptions: Array<out String>?): MethodVisitor? {
             return super.visitMethod(access, name, descriptor, signature, exceptions)?.let { mv ->
                 if (name == CLASS_CONSTRUCTOR_NAME && descriptor == "()V" && !isImmutable) {
+                    hasClassInitializer = true
                     ClassInitVisitor(api, mv, getMappedClassName(), constantFields)
                 } else {
                     mv
@@ -108,6 +127,28 @@ class ClassMutator(
         private val mappedName: String,
         private val constantFields: Set<String>
     ) : MethodBodyCopier(api, mv, initializationCode, CLASS_RESET_PARAMETER_COUNT) {
+        /**
+         * Whether this `<clinit>` is straight-line code that only assigns
+         * values to this class's own static fields. Resetting such a class
+         * has no side effects, and so the sandbox can simply restore these
+         * fields' values instead of executing the reset method again.
+         */
+        private var isSnapshotSafe = true
+
+        /**
+         * Allocate the pool of sandbox strings before anything can use it,
+         * both here and in the reset method. This allocation does not make
+         * the class unsafe to snapshot because `StaticSnapshot` clears the
+         * pool again when it restores the class.
+         */
+        override fun visitCode() {
+            super.visitCode()
+            if (hasStringPool) {
+                allocateStringPool(mv, mappedName)
+                allocateStringPool(initializationCode, mappedName)
+            }
+        }
+
         /**
          * We need to register the reset method at the very end of
          * the `<clinit>` method to ensure that the sandbox classes
@@ -117,18 +158,70 @@ class ClassMutator(
         override fun visitInsn(opcode: Int) {
             if (opcode == RETURN) {
                 EmitterModuleImpl(mv, configuration).apply {
-                    registerResetMethod(mappedName, getCurrentClass().isInterface)
+                    registerResetMethod(mappedName, getCurrentClass().isInterface, isSnapshotSafe)
                     isResetRegistered = true
                 }
+            } else if (opcode == ATHROW || opcode == MONITORENTER || opcode == MONITOREXIT || opcode in IASTORE..SASTORE) {
+                isSnapshotSafe = false
             }
             super.visitInsn(opcode)
         }
 
+        override fun visitMethodInsn(opcode: Int, owner: String, name: String, descriptor: String, isInterface: Boolean) {
+            isSnapshotSafe = false
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface)
+        }
+
+        override fun visitInvokeDynamicInsn(name: String, descriptor: String, bootstrapMethodHandle: Handle, vararg bootstrapMethodArgs: Any?) {
+            isSnapshotSafe = false
+            super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, *bootstrapMethodArgs)
+        }
+
+        override fun visitTypeInsn(opcode: Int, type: String) {
+            isSnapshotSafe = false
+            super.visitTypeInsn(opcode, type)
+        }
+
+        override fun visitIntInsn(opcode: Int, operand: Int) {
+            if (opcode == NEWARRAY) {
+                isSnapshotSafe = false
+            }
+            super.visitIntInsn(opcode, operand)
+        }
+
+        override fun visitMultiANewArrayInsn(descriptor: String, numDimensions: Int) {
+            isSnapshotSafe = false
+            super.visitMultiANewArrayInsn(descriptor, numDimensions)
+        }
+
+        override fun visitJumpInsn(opcode: Int, label: Label) {
+            isSnapshotSafe = false
+            super.visitJumpInsn(opcode, label)
+        }
+
+        override fun visitTableSwitchInsn(min: Int, max: Int, dflt: Label, vararg labels: Label) {
+            isSnapshotSafe = false
+            super.visitTableSwitchInsn(min, max, dflt, *labels)
+        }
+
+        override fun visitLookupSwitchInsn(dflt: Label, keys: IntArray, labels: Array<out Label>) {
+            isSnapshotSafe = false
+            super.visitLookupSwitchInsn(dflt, keys, labels)
+        }
+
+        override fun visitTryCatchBlock(start: Label, end: Label, handler: Label, type: String?) {
+            isSnapshotSafe = false
+            super.visitTryCatchBlock(start, end, handler, type)
+        }
+
         /**
          * The JVM forbids us from modifying static final fields by default.
          * We must therefore use "unsafe" methods to reset them.
          */
         override fun visitFieldInsn(opcode: Int, owner: String?, name: String?, descriptor: String) {
+            if (opcode != GETSTATIC && (opcode != PUTSTATIC || owner != mappedName)) {
+                isSnapshotSafe = false
+            }
             mv.visitFieldInsn(opcode, owner, name, descriptor)
             if ((opcode == PUTSTATIC) && (owner == mappedName) && (name in constantFields)) {
                 when (descriptor[0]) {
@@ -165,6 +258,15 @@ class ClassMutator(
     private val initializationCode = MethodNode()
     private var isResetRegistered = false
     private var isImmutable = false
+    private var hasClassInitializer = false
+
+    /**
+     * The slot for each string constant in this class's pool of sandbox
+     * strings. Immutable classes are never reset, and interfaces cannot
+     * have private fields, and so neither of these has a pool.
+     */
+    private var stringPool: Map<String, Int> = emptyMap()
+    private val hasStringPool: Boolean get() = stringPool.isNotEmpty()
 
     var flags: Int = 0
         private set(value) { field = field or value }
@@ -200,6 +302,8 @@ class ClassMutator(
         if (isImmutable) {
             // Do not instrument immutable classes as the sandbox does not reset them.
             emitters = allEmitters.subList(allEmitters.indexOfFirst { it.priority > EMIT_TRACING }, allEmitters.size)
+        } else if (stringConstants.isNotEmpty() && !resultingClass.isInterface) {
+            stringPool = stringConstants.withIndex().associate { it.value to it.index }
         }
         return super.visitClass(resultingClass as ClassRepresentation)
     }
@@ -210,6 +314,12 @@ class ClassMutator(
      * to create one and register it.
      */
     override fun visitClassEnd(classVisitor: ClassVisitor, clazz: ClassRepresentation) {
+        if (hasStringPool) {
+            writeStringPool(classVisitor)
+            if (!hasClassInitializer) {
+                allocateStringPool(initializationCode, getMappedClassName())
+            }
+        }
         if (initializationCode.instructions.size() > 0) {
             writeClassResetter(classVisitor)
             if (!isResetRegistered) {
@@ -219,6 +329,17 @@ class ClassMutator(
         super.visitClassEnd(classVisitor, clazz)
     }
 
+    private fun writeStringPool(classVisitor: ClassVisitor) {
+        classVisitor.visitField(STRING_POOL_ACCESS, STRING_POOL_NAME, STRING_POOL_DESCRIPTOR, null, null)?.visitEnd()
+        setModified()
+    }
+
+    private fun allocateStringPool(mv: MethodVisitor, className: String) {
+        mv.visitLdcInsn(stringPool.size)
+        mv.visitTypeInsn(ANEWARRAY, "sandbox/java/lang/String")
+        mv.visitFieldInsn(PUTSTATIC, className, STRING_POOL_NAME, STRING_POOL_DESCRIPTOR)
+    }
+
     private fun writeClassResetter(classVisitor: ClassVisitor) {
         classVisitor.visitMethod(CLASS_RESET_ACCESS, CLASS_RESET_NAME, CLASS_RESET_DESCRIPTOR, null, null)?.also { mv ->
             initializationCode.visitMaxs(-1, -1)
@@ -233,7 +354,10 @@ class ClassMutator(
     private fun writeClassInitializer(classVisitor: ClassVisitor) {
         classVisitor.visitMethod(ACC_STATIC or ACC_STRICT, CLASS_CONSTRUCTOR_NAME, "()V", null, null)?.also { mv ->
             mv.visitCode()
-            EmitterModuleImpl(mv, configuration).registerResetMethod(getMappedClassName(), getCurrentClass().isInterface)
+            if (hasStringPool) {
+                allocateStringPool(mv, getMappedClassName())
+            }
+            EmitterModuleImpl(mv, configuration).registerResetMethod(getMappedClassName(), getCurrentClass().isInterface, true)
             mv.visitInsn(RETURN)
             mv.visitMaxs(-1, -1)
             mv.visitEnd()
@@ -278,7 +402,7 @@ class ClassMutator(
      * an existing instruction, or strip it out completely.
      */
     override fun visitInstruction(method: Member, emitter: EmitterModuleImpl, instruction: Instruction) {
-        val context = EmitterContextImpl(currentAnalysisContext(), configuration, emitter)
+        val context = EmitterContextImpl(currentAnalysisContext(), configuration, emitter, stringPool)
         processEntriesOfType(emitters, analysisContext.messages, Consumer {
             it.emit(context, instruction)
         })
@@ -293,6 +417,7 @@ class ClassMutator(
         private const val ACC_STATIC_FINAL: Int = ACC_STATIC or ACC_FINAL
         private const val CLASS_RESET_ACCESS: Int = ACC_PRIVATE or ACC_STATIC or ACC_SYNTHETIC or ACC_STRICT
         private const val CLASS_RESET_PARAMETER_COUNT = 1
+        private const val STRING_POOL_ACCESS: Int = ACC_PRIVATE or ACC_STATIC or ACC_SYNTHETIC
     }
 }
 
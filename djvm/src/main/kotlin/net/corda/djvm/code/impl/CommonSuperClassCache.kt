@@ -0,0 +1,31 @@
+package net.corda.djvm.code.impl
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+
+/**
+ * Remembers the common superclasses that [SandboxClassWriter] has already
+ * computed, so that we only need to walk a pair of class hierarchies once
+ * for each [net.corda.djvm.analysis.AnalysisConfiguration]. The pair of
+ * types is ordered because [SandboxClassWriter.getCommonSuperClass] may
+ * return either one of its arguments when both share a source class.
+ */
+internal class CommonSuperClassCache {
+    private val cache = ConcurrentHashMap<String, ConcurrentMap<String, String>>()
+
+    val size: Int get() = cache.values.sumBy(Map<*, *>::size)
+
+    /**
+     * We must not use [ConcurrentHashMap.computeIfAbsent] here because
+     * computing a common superclass may need to load class headers, and
+     * we don't want to hold any of this map's locks while doing that.
+     */
+    fun getOrCompute(type1: String, type2: String, compute: () -> String): String {
+        val superTypes = cache[type1] ?: ConcurrentHashMap<String, String>().let { superTypes ->
+            cache.putIfAbsent(type1, superTypes) ?: superTypes
+        }
+        return superTypes[type2] ?: compute().let { commonType ->
+            superTypes.putIfAbsent(type2, commonType) ?: commonType
+        }
+    }
+}
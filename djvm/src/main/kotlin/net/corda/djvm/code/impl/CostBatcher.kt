@@ -0,0 +1,226 @@
+package net.corda.djvm.code.impl
+
+import net.corda.djvm.analysis.impl.ClassAndMemberVisitor.Companion.API_VERSION
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes.ALOAD
+import org.objectweb.asm.Opcodes.ASTORE
+import org.objectweb.asm.Opcodes.ATHROW
+import org.objectweb.asm.Opcodes.BIPUSH
+import org.objectweb.asm.Opcodes.DCMPG
+import org.objectweb.asm.Opcodes.ICONST_0
+import org.objectweb.asm.Opcodes.IDIV
+import org.objectweb.asm.Opcodes.IINC
+import org.objectweb.asm.Opcodes.ILOAD
+import org.objectweb.asm.Opcodes.INVOKESTATIC
+import org.objectweb.asm.Opcodes.IREM
+import org.objectweb.asm.Opcodes.IRETURN
+import org.objectweb.asm.Opcodes.ISTORE
+import org.objectweb.asm.Opcodes.LDIV
+import org.objectweb.asm.Opcodes.LREM
+import org.objectweb.asm.Opcodes.LXOR
+import org.objectweb.asm.Opcodes.NOP
+import org.objectweb.asm.Opcodes.POP
+import org.objectweb.asm.Opcodes.RET
+import org.objectweb.asm.Opcodes.RETURN
+import org.objectweb.asm.Opcodes.SIPUSH
+import org.objectweb.asm.tree.AbstractInsnNode
+import org.objectweb.asm.tree.InsnList
+import org.objectweb.asm.tree.InsnNode
+import org.objectweb.asm.tree.IntInsnNode
+import org.objectweb.asm.tree.JumpInsnNode
+import org.objectweb.asm.tree.LabelNode
+import org.objectweb.asm.tree.LdcInsnNode
+import org.objectweb.asm.tree.LookupSwitchInsnNode
+import org.objectweb.asm.tree.MethodInsnNode
+import org.objectweb.asm.tree.MethodNode
+import org.objectweb.asm.tree.TableSwitchInsnNode
+
+/**
+ * Combines the `recordJump`, `recordInvocation` and `recordThrow` calls that the
+ * tracing emitters have written into each basic block of a method into a single
+ * call to `recordCosts(jumps, invocations, throws)`. This call replaces the batch's
+ * first accounting call, and so its costs are charged slightly ahead of time.
+ *
+ * A batch ends at every jump, switch, return or throw, and at any label that is the
+ * target of a branch or switch, or a try-catch boundary. It also ends at any
+ * instruction inside a try-catch block that could throw an exception or invoke
+ * another method, so that a handler in the same method always sees exactly the
+ * costs of the code that has executed. Otherwise, a block always charges the same
+ * costs whenever it completes, and sandboxed code cannot catch the error that
+ * breaching a threshold throws. The only difference is therefore that an exception
+ * which escapes from the middle of a block may already have been charged for the
+ * rest of that block.
+ */
+class CostBatcher(parent: ClassVisitor) : ClassVisitor(API_VERSION, parent) {
+    override fun visitMethod(access: Int, name: String, descriptor: String, signature: String?, exceptions: Array<out String>?): MethodVisitor? {
+        return super.visitMethod(access, name, descriptor, signature, exceptions)?.let { mv ->
+            BatchingMethodNode(access, name, descriptor, signature, exceptions, mv)
+        }
+    }
+
+    /**
+     * Buffers the entire method so that we can rewrite its accounting
+     * calls before passing it on to the next visitor.
+     */
+    private class BatchingMethodNode(
+        access: Int,
+        name: String,
+        descriptor: String,
+        signature: String?,
+        exceptions: Array<out String>?,
+        private val target: MethodVisitor
+    ) : MethodNode(API_VERSION, access, name, descriptor, signature, exceptions) {
+        override fun visitEnd() {
+            super.visitEnd()
+            if (instructions.size() > 0) {
+                batchCosts()
+            }
+            accept(target)
+        }
+
+        private fun batchCosts() {
+            val leaders = findLeaders()
+            val guarded = findGuarded()
+            val batch = Batch()
+            for (insn in instructions.toArray()) {
+                when {
+                    insn is LabelNode && insn in leaders -> batch.flush(instructions)
+                    insn is MethodInsnNode && isCostRecorder(insn) -> batch.add(insn)
+                    endsBlock(insn) || (insn in guarded && !isQuiet(insn)) -> batch.flush(instructions)
+                }
+            }
+            batch.flush(instructions)
+        }
+
+        /**
+         * Every instruction that lies inside a try-catch block.
+         */
+        private fun findGuarded(): Set<AbstractInsnNode> {
+            val guarded = HashSet<AbstractInsnNode>()
+            for (tryCatch in tryCatchBlocks) {
+                var insn: AbstractInsnNode? = tryCatch.start
+                while (insn != null && insn !== tryCatch.end) {
+                    guarded += insn
+                    insn = insn.next
+                }
+            }
+            return guarded
+        }
+
+        /**
+         * Every label that control flow can reach other than by falling through.
+         */
+        private fun findLeaders(): Set<LabelNode> {
+            val leaders = HashSet<LabelNode>()
+            for (insn in instructions) {
+                when (insn) {
+                    is JumpInsnNode -> leaders += insn.label
+                    is TableSwitchInsnNode -> {
+                        leaders += insn.dflt
+                        leaders += insn.labels
+                    }
+                    is LookupSwitchInsnNode -> {
+                        leaders += insn.dflt
+                        leaders += insn.labels
+                    }
+                }
+            }
+            for (tryCatch in tryCatchBlocks) {
+                leaders += tryCatch.start
+                leaders += tryCatch.end
+                leaders += tryCatch.handler
+            }
+            return leaders
+        }
+    }
+
+    /**
+     * The accounting calls that we have found so far within the current batch.
+     */
+    private class Batch {
+        private val calls = mutableListOf<MethodInsnNode>()
+        private var jumps = 0
+        private var invocations = 0
+        private var throws = 0
+
+        fun add(insn: MethodInsnNode) {
+            when (insn.name) {
+                RECORD_JUMP -> ++jumps
+                RECORD_INVOCATION -> ++invocations
+                RECORD_THROW -> ++throws
+            }
+            calls += insn
+        }
+
+        fun flush(instructions: InsnList) {
+            if (calls.size > 1) {
+                val first = calls[0]
+                instructions.insertBefore(first, InsnList().apply {
+                    add(pushInteger(jumps))
+                    add(pushInteger(invocations))
+                    add(pushInteger(throws))
+                    add(MethodInsnNode(INVOKESTATIC, RUNTIME_ACCOUNTER_NAME, RECORD_COSTS, "(III)V", false))
+                })
+                calls.forEach(instructions::remove)
+            }
+            calls.clear()
+            jumps = 0
+            invocations = 0
+            throws = 0
+        }
+    }
+
+    private companion object {
+        private const val RECORD_JUMP = "recordJump"
+        private const val RECORD_INVOCATION = "recordInvocation"
+        private const val RECORD_THROW = "recordThrow"
+        private const val RECORD_COSTS = "recordCosts"
+        private val COST_RECORDERS = setOf(RECORD_JUMP, RECORD_INVOCATION, RECORD_THROW)
+
+        /**
+         * Constants, local variables, stack manipulation, conversions and
+         * arithmetic, except for integer division and remainder.
+         */
+        private val QUIET_OPCODES: Set<Int> = (
+            (NOP..SIPUSH) + (ILOAD..ALOAD) + (ISTORE..ASTORE) + (POP..LXOR) + (IINC..DCMPG)
+        ).toSet() - setOf(IDIV, LDIV, IREM, LREM)
+
+        private fun isCostRecorder(insn: MethodInsnNode): Boolean {
+            return insn.opcode == INVOKESTATIC
+                && insn.owner == RUNTIME_ACCOUNTER_NAME
+                && insn.desc == "()V"
+                && insn.name in COST_RECORDERS
+        }
+
+        /**
+         * Whether control can leave this instruction other than by falling through to the next one.
+         */
+        private fun endsBlock(insn: AbstractInsnNode): Boolean {
+            return insn is JumpInsnNode
+                || insn is TableSwitchInsnNode
+                || insn is LookupSwitchInsnNode
+                || insn.opcode in IRETURN..RETURN
+                || insn.opcode == ATHROW
+                || insn.opcode == RET
+        }
+
+        /**
+         * Whether this instruction always falls through to the next one,
+         * without throwing an exception or invoking any other code.
+         */
+        private fun isQuiet(insn: AbstractInsnNode): Boolean {
+            val opcode = insn.opcode
+            return opcode < 0 || opcode in QUIET_OPCODES
+        }
+
+        private fun pushInteger(value: Int): AbstractInsnNode {
+            return when (value) {
+                in 0..5 -> InsnNode(ICONST_0 + value)
+                in Byte.MIN_VALUE..Byte.MAX_VALUE -> IntInsnNode(BIPUSH, value)
+                in Short.MIN_VALUE..Short.MAX_VALUE -> IntInsnNode(SIPUSH, value)
+                else -> LdcInsnNode(value)
+            }
+        }
+    }
+}
@@ -18,12 +18,14 @@ import net.corda.djvm.references.MemberModule
  * @param analysisContext The context in which a class and its members are processed.
  * @param configuration The configuration to used for the analysis.
  * @property emitterModule A module providing code generation functionality that can be used from within an emitter.
+ * @param stringPool The indices of the string constants within the current class's pool of sandbox strings.
  */
 @CordaInternal
 class EmitterContextImpl(
     private val analysisContext: AnalysisRuntimeContext,
     private val configuration: AnalysisConfiguration,
-    val emitterModule: EmitterModuleImpl
+    val emitterModule: EmitterModuleImpl,
+    private val stringPool: Map<String, Int> = emptyMap()
 ) : EmitterContext {
 
     /**
@@ -81,4 +83,12 @@ class EmitterContextImpl(
         return configuration.classResolver.resolveDescriptor(descriptor)
     }
 
+    /**
+     * The index of a string constant within the current class's pool of
+     * sandbox strings, or -1 if the current class does not have this pool.
+     */
+    internal fun getStringPoolIndex(value: String): Int {
+        return stringPool[value] ?: -1
+    }
+
 }
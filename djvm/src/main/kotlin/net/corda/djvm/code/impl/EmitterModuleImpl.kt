@@ -119,6 +119,14 @@ class EmitterModuleImpl(
         hasEmittedCustomCode = true
     }
 
+    /**
+     * Emit instruction for pushing a static field value onto the stack.
+     */
+    fun pushStatic(owner: String, name: String, descriptor: String) {
+        methodVisitor.visitFieldInsn(GETSTATIC, owner, name, descriptor)
+        hasEmittedCustomCode = true
+    }
+
     /**
      * Emit instruction for pushing a field value onto the stack.
      */
@@ -355,6 +363,35 @@ class EmitterModuleImpl(
         }
     }
 
+    /**
+     * Emit instructions to replace the [String] on top of the stack with the
+     * sandbox string in slot [index] of [className]'s string pool. We only ask
+     * the DJVM to intern the string if this slot is still empty, or if the
+     * class initialiser has not allocated the pool yet.
+     */
+    fun loadPooledString(className: String, index: Int) {
+        val intern = Label()
+        val internEmptySlot = Label()
+        val done = Label()
+        pushStatic(className, STRING_POOL_NAME, STRING_POOL_DESCRIPTOR)
+        duplicate()
+        jump(IFNULL, intern)
+        loadConstant(index)
+        instruction(AALOAD)
+        duplicate()
+        jump(IFNULL, internEmptySlot)
+        instruction(SWAP)
+        pop()
+        jump(GOTO, done)
+        methodVisitor.visitLabel(internEmptySlot)
+        pop()
+        pushStatic(className, STRING_POOL_NAME, STRING_POOL_DESCRIPTOR)
+        methodVisitor.visitLabel(intern)
+        loadConstant(index)
+        invokeStatic(DJVM_NAME, "intern", "(Ljava/lang/String;${STRING_POOL_DESCRIPTOR}I)Lsandbox/java/lang/String;")
+        methodVisitor.visitLabel(done)
+    }
+
     /**
      * Write the bytecode from these [MethodBody] objects as provided.
      */
@@ -365,12 +402,18 @@ class EmitterModuleImpl(
     }
 
     /**
-     * Write invocation to register this class for resetting.
+     * Write invocation to register this class for resetting. A class whose
+     * static fields can be [snapshotted][canSnapshot] may be reset by
+     * restoring their values instead of by invoking its reset method.
      */
-    fun registerResetMethod(className: String, isInterface: Boolean) {
+    fun registerResetMethod(className: String, isInterface: Boolean, canSnapshot: Boolean) {
         loadConstant(Type.getObjectType(className))
         loadConstant(Handle(H_INVOKESTATIC, className, CLASS_RESET_NAME, CLASS_RESET_DESCRIPTOR, isInterface))
-        invokeStatic(DJVM_NAME, REGISTER_RESET_NAME, "(Ljava/lang/Class;Ljava/lang/invoke/MethodHandle;)V")
+        invokeStatic(
+            DJVM_NAME,
+            if (canSnapshot) REGISTER_SNAPSHOT_RESET_NAME else REGISTER_RESET_NAME,
+            "(Ljava/lang/Class;Ljava/lang/invoke/MethodHandle;)V"
+        )
     }
 
     /**
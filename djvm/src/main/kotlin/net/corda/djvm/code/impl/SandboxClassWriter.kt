@@ -30,40 +30,49 @@ class SandboxClassWriter(
     override fun getClassLoader(): SourceClassLoader = cloader
 
     /**
-     * Get the common super type of [type1] and [type2].
+     * Get the common super type of [type1] and [type2]. The answer depends only upon
+     * the class hierarchy, and so we can share it with every other [SandboxClassWriter]
+     * that is using this [AnalysisConfiguration]'s own class loader.
      */
     override fun getCommonSuperClass(type1: String, type2: String): String {
-        // Need to override [getCommonSuperClass] to ensure that we use SourceClassLoader.loadSourceHeader().
         return when {
             type1 == OBJECT_NAME -> type1
             type2 == OBJECT_NAME -> type2
-            else -> {
-                val class1 = try {
-                    classLoader.loadSourceHeader(type1.asPackagePath)
-                } catch (exception: Exception) {
-                    throw TypeNotPresentException(type1, exception)
+            cloader === configuration.supportingClassLoader -> {
+                configuration.commonSuperClasses.getOrCompute(type1, type2) {
+                    computeCommonSuperClass(type1, type2)
                 }
-                val class2 = try {
-                    classLoader.loadSourceHeader(type2.asPackagePath)
-                } catch (exception: Exception) {
-                    throw TypeNotPresentException(type2, exception)
-                }
-                when {
-                    class1.isAssignableFrom(class2) -> type1
-                    class2.isAssignableFrom(class1) -> type2
-                    class1.isInterface || class2.isInterface -> OBJECT_NAME
-                    else -> {
-                        var clazz = class1
-                        do {
-                            clazz = clazz.superclass ?: break
-                        } while (!clazz.isAssignableFrom(class2))
+            }
+            else -> computeCommonSuperClass(type1, type2)
+        }
+    }
 
-                        // Return name of a common superclass within the sandbox.
-                        // ASM will also use these values to compute class method
-                        // stack frames, e.g. for exception handling.
-                        configuration.toSandboxClassName(clazz)
-                    }
-                }
+    private fun computeCommonSuperClass(type1: String, type2: String): String {
+        // Need to override [getCommonSuperClass] to ensure that we use SourceClassLoader.loadSourceHeader().
+        val class1 = try {
+            classLoader.loadSourceHeader(type1.asPackagePath)
+        } catch (exception: Exception) {
+            throw TypeNotPresentException(type1, exception)
+        }
+        val class2 = try {
+            classLoader.loadSourceHeader(type2.asPackagePath)
+        } catch (exception: Exception) {
+            throw TypeNotPresentException(type2, exception)
+        }
+        return when {
+            class1.isAssignableFrom(class2) -> type1
+            class2.isAssignableFrom(class1) -> type2
+            class1.isInterface || class2.isInterface -> OBJECT_NAME
+            else -> {
+                var clazz = class1
+                do {
+                    clazz = clazz.superclass ?: break
+                } while (!clazz.isAssignableFrom(class2))
+
+                // Return name of a common superclass within the sandbox.
+                // ASM will also use these values to compute class method
+                // stack frames, e.g. for exception handling.
+                configuration.toSandboxClassName(clazz)
             }
         }
     }
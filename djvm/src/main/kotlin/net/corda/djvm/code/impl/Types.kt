@@ -31,9 +31,12 @@ const val SANDBOX_CLASS_NAME = "sandbox/java/lang/DJVMClass"
 const val SANDBOX_CLASSLOADER_NAME = "sandbox/java/lang/DJVMClassLoader"
 const val SANDBOX_OBJECT_NAME = "sandbox/java/lang/Object"
 const val REGISTER_RESET_NAME = "forReset"
+const val REGISTER_SNAPSHOT_RESET_NAME = "forSnapshotReset"
 const val CLASS_RESET_NAME = "djvm\$reset"
 const val CLASS_RESET_DESCRIPTOR = "(Ljava/util/function/BiConsumer;)V"
 const val CLASS_CONSTRUCTOR_NAME = "<clinit>"
+const val STRING_POOL_NAME = "djvm\$strings"
+const val STRING_POOL_DESCRIPTOR = "[Lsandbox/java/lang/String;"
 const val CONSTRUCTOR_NAME = "<init>"
 const val FROM_DJVM = "fromDJVM"
 
@@ -1,7 +1,6 @@
 package net.corda.djvm.costing
 
 import net.corda.djvm.utilities.loggerFor
-import java.util.concurrent.ConcurrentHashMap
 import java.util.function.Function
 
 /**
@@ -19,42 +18,55 @@ class RuntimeCost(
     /**
      * The thread-local container for the cost accumulator.
      */
-    private val costValue = object : ThreadLocal<Long>() {
-        override fun initialValue(): Long = 0
+    private val costValue = object : ThreadLocal<Counter>() {
+        override fun initialValue() = Counter(Thread.currentThread(), threadState.get())
     }
 
+    /**
+     * The counter most recently used by this metric. Each sandbox normally
+     * runs on a single thread, and so this allows us to bypass [costValue]
+     * for every increment after the first one.
+     */
+    private var boundCounter: Counter? = null
+
     /**
      * Property getter for accessing the current accumulated cost.
      */
     val value: Long
-        get() = costValue.get()
+        get() = currentCounter().value
 
     /**
-     * Helper function for doing a guarded increment of the cost value, with a mechanism for consistent error reporting
-     * and nuking of the current thread environment if threshold breaches are encountered.
+     * Returns the current thread's [Counter], binding it to this metric
+     * if it isn't bound already. The counter's thread is a final field,
+     * which makes it safe to check ownership without any synchronisation.
      */
-    private fun incrementAndCheck(incrementBy: Long) {
-        val currentThread = getAndCheckThread() ?: return
-        val newValue = Math.addExact(costValue.get(), incrementBy)
-        costValue.set(newValue)
-        if (newValue > threshold) {
-            val message = errorMessage.apply(currentThread)
-            logger.error("Threshold breached; {}", message)
-            throw ThresholdViolationError(message)
+    private fun currentCounter(): Counter {
+        val currentThread = Thread.currentThread()
+        val counter = boundCounter
+        return if (counter != null && counter.thread === currentThread) {
+            counter
+        } else {
+            costValue.get().also { boundCounter = it }
         }
     }
 
     /**
-     * If [filteredThreads] is specified, this method will filter out those threads whenever threshold constraints are
-     * being tested. This can be used to disable cost accounting on a primary thread, for instance.
+     * Helper function for doing a guarded increment of the cost value, with a mechanism for consistent error reporting
+     * and nuking of the current thread environment if threshold breaches are encountered.
      */
-    private fun getAndCheckThread(): Thread? {
-        val currentThread = Thread.currentThread()
-        if (currentThread in filteredThreads) {
+    private fun incrementAndCheck(incrementBy: Long) {
+        val counter = currentCounter()
+        if (counter.state.isUncosted) {
             logger.trace("Thread will not be affected by runtime costing")
-            return null
+            return
+        }
+        val newValue = Math.addExact(counter.value, incrementBy)
+        counter.value = newValue
+        if (newValue > threshold) {
+            val message = errorMessage.apply(counter.thread)
+            logger.error("Threshold breached; {}", message)
+            throw ThresholdViolationError(message)
         }
-        return currentThread
     }
 
     /**
@@ -72,24 +84,53 @@ class RuntimeCost(
      */
     fun increment() = increment(1L)
 
+    /**
+     * Discard the current thread's accumulated cost, so that a pooled
+     * thread can begin its next task with a zero cost. This also removes
+     * the thread's counter for this metric from its thread-locals.
+     */
+    fun reset() {
+        if (boundCounter?.thread === Thread.currentThread()) {
+            boundCounter = null
+        }
+        costValue.remove()
+    }
+
+    /**
+     * A mutable, unboxed cost accumulator which belongs to a single thread.
+     */
+    private class Counter(val thread: Thread, val state: ThreadState) {
+        var value: Long = 0
+    }
+
+    /**
+     * Per-thread state that is shared by every [RuntimeCost] metric.
+     */
+    private class ThreadState {
+        var isUncosted: Boolean = false
+    }
+
     companion object {
         /**
-         * A set of threads to which cost accounting will be disabled.
+         * Tracks whether cost accounting has been disabled for each thread.
          */
-        private val filteredThreads: MutableSet<Thread> = ConcurrentHashMap.newKeySet()
+        private val threadState = object : ThreadLocal<ThreadState>() {
+            override fun initialValue() = ThreadState()
+        }
 
         private val logger = loggerFor<RuntimeCost>()
 
         fun uncosted(action: Runnable) {
-            val currentThread = Thread.currentThread()
-            if (filteredThreads.add(currentThread)) {
+            val state = threadState.get()
+            if (!state.isUncosted) {
+                state.isUncosted = true
                 try {
                     action.run()
                 } finally {
-                    filteredThreads.remove(currentThread)
+                    state.isUncosted = false
                 }
             } else {
-                throw IllegalStateException("Thread ${currentThread.name} is already running an uncosted operation")
+                throw IllegalStateException("Thread ${Thread.currentThread().name} is already running an uncosted operation")
             }
         }
     }
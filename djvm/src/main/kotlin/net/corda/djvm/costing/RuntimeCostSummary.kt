@@ -55,4 +55,14 @@ class RuntimeCostSummary private constructor(
         "Sandbox [${it.name}] terminated due to excessive exception throwing"
     })
 
+    /**
+     * Discard the current thread's accumulated costs for every metric.
+     */
+    fun reset() {
+        allocationCost.reset()
+        jumpCost.reset()
+        invocationCost.reset()
+        throwCost.reset()
+    }
+
 }
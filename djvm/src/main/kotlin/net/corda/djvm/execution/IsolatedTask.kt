@@ -2,14 +2,26 @@ package net.corda.djvm.execution
 
 import net.corda.djvm.SandboxConfiguration
 import net.corda.djvm.SandboxRuntimeContext
+import net.corda.djvm.SandboxThread
 import net.corda.djvm.messages.MessageCollection
 import net.corda.djvm.rewiring.SandboxClassLoader
 import net.corda.djvm.rewiring.SandboxClassLoadingException
 import net.corda.djvm.utilities.loggerFor
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit.MILLISECONDS
 import java.util.concurrent.atomic.AtomicLong
+import java.util.function.BiConsumer
+import java.util.function.BiFunction
 import java.util.function.Consumer
 import java.util.function.Function
-import kotlin.concurrent.thread
+import java.util.function.Supplier
 
 /**
  * Container for running a task in an isolated environment.
@@ -29,7 +41,7 @@ class IsolatedTask(
         var output: T? = null
         var costs = CostSummary.empty
         var exception: Throwable? = null
-        thread(start = false, isDaemon = true, name = threadName) {
+        SandboxThread(Runnable {
             logger.trace("Entering isolated runtime environment...")
             context.use(Consumer { ctx ->
                 output = try {
@@ -39,7 +51,8 @@ class IsolatedTask(
                 }
             })
             logger.trace("Exiting isolated runtime environment...")
-        }.apply {
+        }, threadName).apply {
+            isDaemon = true
             uncaughtExceptionHandler = Thread.UncaughtExceptionHandler { _, ex ->
                 logger.error("Exception caught in isolated runtime environment", ex)
                 exception = (ex as? LinkageError)?.cause ?: ex
@@ -47,19 +60,95 @@ class IsolatedTask(
             start()
             join()
         }
-        val messages = exception.let {
-            when (it) {
-                is SandboxClassLoadingException -> it.messages
-                is SandboxException -> {
-                    when (it.exception) {
-                        is SandboxClassLoadingException -> it.exception.messages
-                        else -> null
-                    }
+        return Result(threadName, output, costs, messagesFor(exception), exception)
+    }
+
+    /**
+     * Run an action for each of the [inputs] in the same isolated environment,
+     * which is reset before each input. This avoids creating a new thread and
+     * opening a new sandbox for every input. Each input has its own [Result],
+     * whose costs are only those of that input.
+     *
+     * Note that a class which fails to initialise for one input will also
+     * be unusable for every subsequent input in the batch.
+     */
+    fun <I, T> runBatch(inputs: List<I>, action: BiFunction<SandboxClassLoader, in I, T?>): List<Result<T>> {
+        val threadName = "DJVM-$identifier-${uniqueIdentifier.getAndIncrement()}"
+        val results = ArrayList<Result<T>>(inputs.size)
+        var exception: Throwable? = null
+        SandboxThread(Runnable {
+            logger.trace("Entering isolated runtime environment...")
+            context.useEach(inputs, BiConsumer<SandboxRuntimeContext, I> { ctx, input ->
+                var output: T? = null
+                var inputException: Throwable? = null
+                try {
+                    output = action.apply(ctx.classLoader, input)
+                } catch (ex: Throwable) {
+                    logger.error("Exception caught in isolated runtime environment", ex)
+                    inputException = (ex as? LinkageError)?.cause ?: ex
                 }
-                else -> null
+                val costs = CostSummary(ctx.runtimeCosts)
+                ctx.runtimeCosts.reset()
+                results.add(Result(threadName, output, costs, messagesFor(inputException), inputException))
+            })
+            logger.trace("Exiting isolated runtime environment...")
+        }, threadName).apply {
+            isDaemon = true
+            uncaughtExceptionHandler = Thread.UncaughtExceptionHandler { _, ex ->
+                logger.error("Exception caught in isolated runtime environment", ex)
+                exception = (ex as? LinkageError)?.cause ?: ex
             }
-        } ?: MessageCollection()
-        return Result(threadName, output, costs, messages, exception)
+            start()
+            join()
+        }
+
+        // Any inputs that we could not run share the sandbox's own exception.
+        while (results.size < inputs.size) {
+            results.add(Result(threadName, null, CostSummary.empty, messagesFor(exception), exception))
+        }
+        return results
+    }
+
+    /**
+     * Run an action in an isolated environment on one of the [workers]' threads,
+     * rather than on a new thread of its own. The worker thread is renamed
+     * for the duration of the task, and its runtime costs are discarded
+     * afterwards so that they cannot leak into the thread's next task.
+     *
+     * @param workers The [Executor] whose threads will run this task, e.g. from [createWorkerPool].
+     * @param action The action to run inside the sandbox.
+     * @return A [CompletableFuture] for the task's [Result].
+     */
+    fun <T> submit(workers: Executor, action: Function<SandboxClassLoader, T?>): CompletableFuture<Result<T>> {
+        val threadName = "DJVM-$identifier-${uniqueIdentifier.getAndIncrement()}"
+        return CompletableFuture.supplyAsync(Supplier { runOnCurrentThread(threadName, action) }, workers)
+    }
+
+    private fun <T> runOnCurrentThread(threadName: String, action: Function<SandboxClassLoader, T?>): Result<T> {
+        val currentThread = Thread.currentThread()
+        val workerName = currentThread.name
+        var output: T? = null
+        var costs = CostSummary.empty
+        var exception: Throwable? = null
+        currentThread.name = threadName
+        try {
+            logger.trace("Entering isolated runtime environment...")
+            context.use(Consumer { ctx ->
+                output = try {
+                    action.apply(ctx.classLoader)
+                } finally {
+                    costs = CostSummary(ctx.runtimeCosts)
+                    ctx.runtimeCosts.reset()
+                }
+            })
+            logger.trace("Exiting isolated runtime environment...")
+        } catch (ex: Throwable) {
+            logger.error("Exception caught in isolated runtime environment", ex)
+            exception = (ex as? LinkageError)?.cause ?: ex
+        } finally {
+            currentThread.name = workerName
+        }
+        return Result(threadName, output, costs, messagesFor(exception), exception)
     }
 
     /**
@@ -81,15 +170,59 @@ class IsolatedTask(
 
     // TODO Caching can transcend thread-local contexts by taking the sandbox configuration into account in the key derivation
 
-    private companion object {
+    companion object {
 
         /**
          * An atomically incrementing identifier used to uniquely identify each runnable.
          */
         private val uniqueIdentifier = AtomicLong(0)
 
+        /**
+         * An atomically incrementing identifier used to name each pooled worker thread.
+         */
+        private val workerIdentifier = AtomicLong(0)
+
         private val logger = loggerFor<IsolatedTask>()
 
+        private val workerFactory = ThreadFactory { runnable ->
+            SandboxThread(runnable, "DJVM-worker-${workerIdentifier.getAndIncrement()}").apply { isDaemon = true }
+        }
+
+        /**
+         * Create a fixed-size pool of daemon [SandboxThread]s for running [IsolatedTask]s.
+         * The caller is responsible for shutting this pool down.
+         */
+        @JvmStatic
+        fun createWorkerPool(threads: Int): ExecutorService {
+            return Executors.newFixedThreadPool(threads, workerFactory)
+        }
+
+        /**
+         * Create a fixed-size pool of daemon [SandboxThread]s for running [IsolatedTask]s,
+         * which can queue at most [queueCapacity] tasks that are waiting for a thread.
+         * The pool rejects any further tasks with a [RejectedExecutionException].
+         * The caller is responsible for shutting this pool down.
+         */
+        @JvmStatic
+        fun createWorkerPool(threads: Int, queueCapacity: Int): ExecutorService {
+            return ThreadPoolExecutor(threads, threads, 0L, MILLISECONDS, ArrayBlockingQueue(queueCapacity), workerFactory)
+        }
+
+        private fun messagesFor(exception: Throwable?): MessageCollection {
+            return exception.let {
+                when (it) {
+                    is SandboxClassLoadingException -> it.messages
+                    is SandboxException -> {
+                        when (it.exception) {
+                            is SandboxClassLoadingException -> it.exception.messages
+                            else -> null
+                        }
+                    }
+                    else -> null
+                }
+            } ?: MessageCollection()
+        }
+
     }
 
 }
\ No newline at end of file
@@ -2,7 +2,10 @@ package net.corda.djvm.execution
 
 import net.corda.djvm.CordaInternal
 import net.corda.djvm.utilities.loggerFor
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
 import java.util.function.BiConsumer
 
 /**
@@ -16,7 +19,7 @@ class QueueProcessor<T>(
 
     private val queue = ConcurrentLinkedQueue<T>(elements.toMutableList())
 
-    private val seenElements = mutableSetOf<String>()
+    private val seenElements: MutableSet<String> = ConcurrentHashMap.newKeySet()
 
     /**
      * Add an element to the queue.
@@ -24,9 +27,8 @@ class QueueProcessor<T>(
     fun enqueue(element: T) {
         logger.trace("Enqueuing {}...", element)
         val key = deduplicationKeyExtractor(element)
-        if (key !in seenElements) {
+        if (seenElements.add(key)) {
             queue.add(element)
-            seenElements.add(key)
         } else {
             logger.trace("Skipped {} as it has already been processed", element)
         }
@@ -54,6 +56,27 @@ class QueueProcessor<T>(
         }
     }
 
+    /**
+     * Process the current queue in batches, where the action is applied to every
+     * element of a batch in parallel. Elements enqueued while processing one batch
+     * will be processed as part of the next batch.
+     */
+    fun process(pool: ForkJoinPool, action: BiConsumer<QueueProcessor<T>, T>) {
+        while (isNotEmpty()) {
+            val batch = ArrayList<T>()
+            while (isNotEmpty()) {
+                batch.add(dequeue())
+            }
+            try {
+                pool.submit {
+                    batch.parallelStream().forEach { element -> action.accept(this, element) }
+                }.get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+        }
+    }
+
     private val logger = loggerFor<QueueProcessor<T>>()
 
 }
\ No newline at end of file
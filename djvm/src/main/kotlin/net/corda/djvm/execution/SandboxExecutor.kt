@@ -12,7 +12,14 @@ import net.corda.djvm.rewiring.SandboxClassLoadingException
 import net.corda.djvm.source.ClassSource
 import net.corda.djvm.utilities.loggerFor
 import net.corda.djvm.validation.ReferenceValidationSummary
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CompletionStage
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RejectedExecutionException
 import java.util.function.BiConsumer
+import java.util.function.BiFunction
 import java.util.function.Function
 
 /**
@@ -22,11 +29,22 @@ import java.util.function.Function
  *
  * @property configuration The configuration of sandbox.
  * @property validating Whether the sandbox should pre-validate the class before executing it.
+ * @property parallelism The number of threads to use when validating classes.
+ * @property workers The pool of threads for [runAsync], e.g. from [IsolatedTask.createWorkerPool].
  */
 class SandboxExecutor<in INPUT, out OUTPUT>(
         configuration: SandboxConfiguration,
-        private val validating: Boolean
+        private val validating: Boolean,
+        private val parallelism: Int,
+        private val workers: ExecutorService?
 ) : Executor<INPUT, OUTPUT>(configuration) {
+    constructor(configuration: SandboxConfiguration, validating: Boolean, parallelism: Int)
+        : this(configuration, validating, parallelism, null)
+    constructor(configuration: SandboxConfiguration, validating: Boolean) : this(configuration, validating, 1)
+
+    init {
+        require(parallelism > 0) { "Parallelism must be positive" }
+    }
 
     private val classModule = configuration.analysisConfiguration.classModule
 
@@ -70,40 +88,152 @@ class SandboxExecutor<in INPUT, out OUTPUT>(
         //    and consequently hit the cache. Once loaded, we can execute the code on the spawned thread, i.e., in an
         //    isolated environment.
         logger.debug("Executing {} with input {}...", runnableClass, input)
-        // TODO Class sources can be analyzed in parallel, although this require making the analysis context thread-safe
-        // To do so, one could start by batching the first X classes from the class sources and analyse each one in
-        // parallel, caching any intermediate state and subsequently process enqueued sources in parallel batches as well.
-        // Note that this would require some rework of the [IsolatedTask] and the class loader to bypass the limitation
-        // of caching and state preserved in thread-local contexts.
-        val result = IsolatedTask(runnableClass.qualifiedClassName, configuration).run<OUTPUT>(Function { classLoader ->
-            if (validating) {
-                val context = AnalysisContext.fromConfiguration(configuration.analysisConfiguration)
-                validate(context, classLoader, listOf(runnableClass))
+        val result = IsolatedTask(runnableClass.qualifiedClassName, configuration).run<OUTPUT>(createTask(runnableClass, input))
+        logger.trace("Execution of {} with input {} resulted in {}", runnableClass, input, result)
+        return summarise(runnableClass, result)
+    }
+
+    /**
+     * Short-hand for running a [Function] in a sandbox for each of several inputs by its type reference.
+     */
+    inline fun <T, R, reified TRunnable : Function<T, R>> runBatch(inputs: List<INPUT>):
+            List<IsolatedTask.Result<out OUTPUT>> {
+        return runBatch(ClassSource.fromClassName(TRunnable::class.java.name), inputs)
+    }
+
+    /**
+     * Executes a [sandbox Function][sandbox.java.util.function.Function] implementation for each
+     * of the [inputs] in turn, inside a single sandbox which is reset between inputs. The task is
+     * only validated once, and each input is passed to a new instance of the task.
+     *
+     * @param runnableClass The entry point of the sandboxed code to run.
+     * @param inputs The inputs to provide to the sandboxed environment.
+     *
+     * @returns A [IsolatedTask.Result] for each input, containing either the output returned from the
+     * sandboxed code or else the [SandboxException] that [run] would have thrown for that input, as
+     * well as the runtime costs of that input.
+     */
+    fun runBatch(
+            runnableClass: ClassSource,
+            inputs: List<INPUT>
+    ): List<IsolatedTask.Result<out OUTPUT>> {
+        logger.debug("Executing {} with {} inputs...", runnableClass, inputs.size)
+        var taskFactory: Function<in Any, out Function<in Any?, out Any?>>? = null
+        val results = IsolatedTask(runnableClass.qualifiedClassName, configuration).runBatch<INPUT, OUTPUT>(inputs, BiFunction<SandboxClassLoader, INPUT, OUTPUT?> { classLoader, input ->
+            val factory = taskFactory ?: createTaskFactory(runnableClass, classLoader).also { taskFactory = it }
+            execute(runnableClass, classLoader, factory, input)
+        })
+        return results.map { result ->
+            val exception = result.exception
+            if (exception == null) {
+                result
+            } else {
+                result.copy(exception = sandboxExceptionFor(runnableClass, result, exception))
+            }
+        }
+    }
+
+    /**
+     * Short-hand for running a [Function] asynchronously in a sandbox by its type reference.
+     */
+    inline fun <T, R, reified TRunnable : Function<T, R>> runAsync(input: INPUT):
+            CompletionStage<out ExecutionSummaryWithResult<OUTPUT>> {
+        return runAsync(ClassSource.fromClassName(TRunnable::class.java.name), input)
+    }
+
+    /**
+     * Executes a [sandbox Function][sandbox.java.util.function.Function] implementation on one of the
+     * [workers]' threads, without blocking the caller. The [workers] should have a bounded queue, so that
+     * a burst of tasks cannot create an unbounded number of threads or consume an unbounded amount of memory.
+     *
+     * @param runnableClass The entry point of the sandboxed code to run.
+     * @param input The input to provide to the sandboxed environment.
+     *
+     * @returns A [CompletionStage] for the output returned from the sandboxed code. This completes
+     * exceptionally with a [SandboxException] if the sandboxed code throws an exception, in the same
+     * way that [run] does, or with a [RejectedExecutionException] if the [workers] cannot accept
+     * any more tasks. The caller should retry a rejected task later.
+     * @throws IllegalStateException If this executor has no [workers].
+     */
+    fun runAsync(
+            runnableClass: ClassSource,
+            input: INPUT
+    ): CompletionStage<out ExecutionSummaryWithResult<OUTPUT>> {
+        val pool = workers ?: throw IllegalStateException("This executor has no worker threads")
+        logger.debug("Submitting {} with input {}...", runnableClass, input)
+        val submitted = try {
+            IsolatedTask(runnableClass.qualifiedClassName, configuration).submit<OUTPUT>(pool, createTask(runnableClass, input))
+        } catch (e: RejectedExecutionException) {
+            logger.debug("Execution of {} rejected: {}", runnableClass, e.message)
+            return CompletableFuture<ExecutionSummaryWithResult<OUTPUT>>().apply { completeExceptionally(e) }
+        }
+        val summary = CompletableFuture<ExecutionSummaryWithResult<OUTPUT>>()
+        submitted.whenComplete { result, error ->
+            if (error != null) {
+                summary.completeExceptionally((error as? CompletionException)?.cause ?: error)
+            } else {
+                logger.trace("Execution of {} with input {} resulted in {}", runnableClass, input, result)
+                try {
+                    summary.complete(summarise(runnableClass, result))
+                } catch (e: SandboxException) {
+                    summary.completeExceptionally(e)
+                }
             }
+        }
+        return summary
+    }
+
+    private fun createTask(runnableClass: ClassSource, input: INPUT) = Function<SandboxClassLoader, OUTPUT?> { classLoader ->
+        execute(runnableClass, classLoader, createTaskFactory(runnableClass, classLoader), input)
+    }
+
+    private fun createTaskFactory(
+        runnableClass: ClassSource,
+        classLoader: SandboxClassLoader
+    ): Function<in Any, out Function<in Any?, out Any?>> {
+        if (validating) {
+            validate(createAnalysisContext(), classLoader, listOf(runnableClass))
+        }
+        return classLoader.createTaskFactory()
+    }
 
-            // Create the user's task object inside the sandbox.
-            val runnable = classLoader.loadClassForSandbox(runnableClass).getDeclaredConstructor().newInstance()
+    private fun execute(
+        runnableClass: ClassSource,
+        classLoader: SandboxClassLoader,
+        taskFactory: Function<in Any, out Function<in Any?, out Any?>>,
+        input: INPUT
+    ): OUTPUT? {
+        // Create the user's task object inside the sandbox.
+        val runnable = classLoader.loadClassForSandbox(runnableClass).getDeclaredConstructor().newInstance()
+        val task = taskFactory.apply(runnable)
 
-            val taskFactory = classLoader.createTaskFactory()
-            val task = taskFactory.apply(runnable)
+        // Execute the task...
+        @Suppress("UNCHECKED_CAST")
+        return task.apply(input) as? OUTPUT
+    }
 
-            // Execute the task...
-            @Suppress("UNCHECKED_CAST")
-            task.apply(input) as? OUTPUT
-        })
-        logger.trace("Execution of {} with input {} resulted in {}", runnableClass, input, result)
+    /**
+     * Wraps any exception from the sandbox inside a [SandboxException], with
+     * additional information about the sandboxed environment.
+     */
+    @Throws(SandboxException::class)
+    private fun summarise(runnableClass: ClassSource, result: IsolatedTask.Result<OUTPUT>): ExecutionSummaryWithResult<OUTPUT> {
         when (result.exception) {
             null -> return ExecutionSummaryWithResult(result.output, result.costs)
-            else -> throw SandboxException(
-                Message.getMessageFromException(result.exception),
-                result.identifier,
-                runnableClass,
-                ExecutionSummary(result.costs),
-                result.exception
-            )
+            else -> throw sandboxExceptionFor(runnableClass, result, result.exception)
         }
     }
 
+    private fun sandboxExceptionFor(runnableClass: ClassSource, result: IsolatedTask.Result<*>, exception: Throwable): SandboxException {
+        return SandboxException(
+            Message.getMessageFromException(exception),
+            result.identifier,
+            runnableClass,
+            ExecutionSummary(result.costs),
+            exception
+        )
+    }
+
     /**
      * Load a class source using the sandbox class loader, yielding a [LoadedClass] object with the class' byte code,
      * type and name attached.
@@ -132,8 +262,16 @@ class SandboxExecutor<in INPUT, out OUTPUT>(
      */
     @Throws(SandboxClassLoadingException::class)
     fun validate(vararg classSources: ClassSource): ReferenceValidationSummary {
+        return validate(createAnalysisContext(), *classSources)
+    }
+
+    /**
+     * Validate the provided class source(s) into the given analysis context,
+     * which must be concurrent when [parallelism] is greater than one.
+     */
+    @Throws(SandboxClassLoadingException::class)
+    internal fun validate(context: AnalysisContext, vararg classSources: ClassSource): ReferenceValidationSummary {
         logger.trace("Validating {}...", classSources)
-        val context = AnalysisContext.fromConfiguration(configuration.analysisConfiguration)
         val result = IsolatedTask("Validation", configuration).run<ReferenceValidationSummary>(Function { classLoader ->
             validate(context, classLoader, classSources.toList())
         })
@@ -160,7 +298,12 @@ class SandboxExecutor<in INPUT, out OUTPUT>(
     ): ReferenceValidationSummary {
         processClassQueue(*classSources.toTypedArray()) { classSource, className ->
             val didLoad = try {
-                classLoader.copyEmpty(context).loadClassForSandbox(classSource)
+                val loader = if (context.isConcurrent) {
+                    classLoader.copyIsolated(context)
+                } else {
+                    classLoader.copyEmpty(context)
+                }
+                loader.loadClassForSandbox(classSource)
                 true
             } catch (exception: SandboxClassLoadingException) {
                 // Continue; all warnings and errors are captured in [context.messages]
@@ -184,17 +327,39 @@ class SandboxExecutor<in INPUT, out OUTPUT>(
     }
 
     /**
-     * Process a dynamic queue of [ClassSource] entries.
+     * Process a dynamic queue of [ClassSource] entries. These are processed in parallel
+     * batches when [parallelism] is greater than one. Each batch of queued sources shares
+     * a concurrent analysis context, but each class is loaded by its own isolated copy of
+     * the sandbox class loader.
      */
     private fun processClassQueue(
             vararg elements: ClassSource, action: QueueProcessor<ClassSource>.(ClassSource, String) -> Unit
     ) {
-        QueueProcessor(ClassSource::qualifiedClassName, *elements).process(BiConsumer { processor, classSource ->
+        val processor = QueueProcessor(ClassSource::qualifiedClassName, *elements)
+        val classAction = BiConsumer<QueueProcessor<ClassSource>, ClassSource> { queue, classSource ->
             val className = classResolver.reverse(classModule.getBinaryClassName(classSource.qualifiedClassName))
             if (!whitelist.matches(className)) {
-                processor.action(classSource, className)
+                queue.action(classSource, className)
             }
-        })
+        }
+        if (parallelism > 1) {
+            val pool = ForkJoinPool(parallelism)
+            try {
+                processor.process(pool, classAction)
+            } finally {
+                pool.shutdown()
+            }
+        } else {
+            processor.process(classAction)
+        }
+    }
+
+    private fun createAnalysisContext(): AnalysisContext {
+        return if (parallelism > 1) {
+            AnalysisContext.concurrentFromConfiguration(configuration.analysisConfiguration)
+        } else {
+            AnalysisContext.fromConfiguration(configuration.analysisConfiguration)
+        }
     }
 
     /**
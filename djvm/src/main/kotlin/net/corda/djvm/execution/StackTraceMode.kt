@@ -0,0 +1,23 @@
+package net.corda.djvm.execution
+
+/**
+ * When a sandboxed exception should capture its stack trace.
+ * This does not affect the cost of throwing an exception.
+ */
+enum class StackTraceMode {
+    /**
+     * Capture and convert the stack trace when the exception is created.
+     */
+    EAGER,
+
+    /**
+     * Capture the stack trace when the exception is created,
+     * but only convert it when someone asks to read it.
+     */
+    LAZY,
+
+    /**
+     * Sandboxed exceptions have empty stack traces.
+     */
+    NONE
+}
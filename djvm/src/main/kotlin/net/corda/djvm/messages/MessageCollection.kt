@@ -1,6 +1,11 @@
 package net.corda.djvm.messages
 
 import net.corda.djvm.references.MemberInformation
+import java.util.Collections.synchronizedList
+import java.util.TreeSet
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentSkipListSet
+import java.util.concurrent.atomic.AtomicIntegerArray
 
 /**
  * Collection of captured problems and messages, grouped by class and member. The collection also handles de-duplication
@@ -9,45 +14,56 @@ import net.corda.djvm.references.MemberInformation
  * @property minimumSeverity Only record messages of this severity or higher.
  * @property prefixFilters Only record messages where the originating class name matches one of the provided prefixes.
  * If none are provided, all messages will be reported.
+ * @property isConcurrent Whether several threads can add messages at once.
  */
 @Suppress("unused", "MemberVisibilityCanBePrivate")
 class MessageCollection(
     private val minimumSeverity: Severity,
-    private val prefixFilters: List<String>
+    private val prefixFilters: List<String>,
+    private val isConcurrent: Boolean
 ) {
+    constructor(minimumSeverity: Severity, prefixFilters: List<String>) : this(minimumSeverity, prefixFilters, false)
     constructor() : this(Severity.INFORMATIONAL, emptyList())
 
-    private val seenEntries = mutableSetOf<String>()
+    private val seenEntries: MutableSet<EntryKey> = if (isConcurrent) ConcurrentHashMap.newKeySet() else mutableSetOf()
 
-    private val classMessages = mutableMapOf<String, MutableList<Message>>()
+    private val classMessages = createMessageMap<String>()
 
-    private val memberMessages = mutableMapOf<String, MutableList<Message>>()
+    private val memberMessages = createMessageMap<MemberKey>()
 
-    private var cachedEntries: List<Message>? = null
+    /**
+     * The distinct messages, kept in the order that [sorted] returns them.
+     */
+    private val orderedMessages: OrderedMessages = if (isConcurrent) ConcurrentMessages() else SequentialMessages()
+
+    /**
+     * Whether this collection would record a message of this
+     * severity from this class. This allows us to discard a
+     * message before we have even created it.
+     */
+    fun accepts(severity: Severity, className: String): Boolean {
+        return severity >= minimumSeverity
+            && (prefixFilters.isEmpty() || prefixFilters.any { className.startsWith(it) })
+    }
 
     /**
      * Add a message to the collection.
      */
     fun add(message: Message) {
-        if (message.severity < minimumSeverity) {
-            return
-        }
-        if (prefixFilters.isNotEmpty() && !prefixFilters.any { message.location.className.startsWith(it) }) {
+        val location = message.location
+        if (!accepts(message.severity, location.className)) {
             return
         }
-        val location = message.location
-        val key = "${location.className}:${location.memberName}:${location.lineNumber}:${message.message}"
-        if (key in seenEntries) {
+        if (!seenEntries.add(EntryKey(location.className, location.memberName, location.lineNumber, message.message))) {
             return
         }
-        seenEntries.add(key)
         when {
             location.memberName.isBlank() ->
                 messagesFor(location.className).add(message)
             else ->
                 messagesFor(location.className, location.memberName, location.descriptor).add(message)
         }
-        cachedEntries = null
+        orderedMessages.add(DistinctKey(message.severity, location.className, location.memberName, message.message), message)
     }
 
     /**
@@ -62,14 +78,14 @@ class MessageCollection(
     /**
      * Get all recorded messages for a given class.
      */
-    fun messagesFor(className: String) =
-            classMessages.getOrPut(className) { mutableListOf() }
+    fun messagesFor(className: String): MutableList<Message> =
+            classMessages.computeIfAbsent(className) { createMessageList() }
 
     /**
      * Get all recorded messages for a given class member.
      */
-    fun messagesFor(className: String, memberName: String, descriptor: String) =
-            memberMessages.getOrPut("$className.$memberName:$descriptor") { mutableListOf() }
+    fun messagesFor(className: String, memberName: String, descriptor: String): MutableList<Message> =
+            memberMessages.computeIfAbsent(MemberKey(className, memberName, descriptor)) { createMessageList() }
 
     /**
      * Get all recorded messages for a given class or class member.
@@ -92,53 +108,39 @@ class MessageCollection(
     /**
      * Get a consistently sorted list of messages of severity greater than or equal to [minimumSeverity].
      */
-    fun sorted(): List<Message> {
-        val entries = cachedEntries
-        if (entries != null) {
-            return entries
-        }
-        cachedEntries = this
-                .all
-                .filter { it.severity >= minimumSeverity }
-                .distinctBy { "${it.severity} ${it.location.className}.${it.location.memberName} ${it.message}" }
-                .sortedWith(compareBy(
-                        { it.severity.precedence },
-                        { it.location.sourceFile },
-                        { it.location.lineNumber },
-                        { "${it.location.className}${it.location.memberName}" }
-                ))
-        return cachedEntries!!
-    }
+    fun sorted(): List<Message> = orderedMessages.sorted()
 
     /**
      * The total number of messages that have been recorded.
      */
     val count: Int
-        get() = sorted().count()
+        get() = Severity.values().sumBy(orderedMessages::countOf)
 
     /**
      * The total number of errors that have been recorded.
      */
     val errorCount: Int
-        get() = sorted().count { it.severity == Severity.ERROR }
+        get() = countOf(Severity.ERROR)
 
     /**
      * The total number of warnings that have been recorded.
      */
     val warningCount: Int
-        get() = sorted().count { it.severity == Severity.WARNING }
+        get() = countOf(Severity.WARNING)
 
     /**
      * The total number of information messages that have been recorded.
      */
     val infoCount: Int
-        get() = sorted().count { it.severity == Severity.INFORMATIONAL }
+        get() = countOf(Severity.INFORMATIONAL)
 
     /**
      * The total number of trace messages that have been recorded.
      */
     val traceCount: Int
-        get() = sorted().count { it.severity == Severity.TRACE }
+        get() = countOf(Severity.TRACE)
+
+    private fun countOf(severity: Severity): Int = orderedMessages.countOf(severity)
 
     /**
      * The breakdown of numbers of messages per severity level.
@@ -151,14 +153,137 @@ class MessageCollection(
                 Severity.ERROR to errorCount
         )
 
+    private fun <K> createMessageMap(): MutableMap<K, MutableList<Message>> {
+        return if (isConcurrent) ConcurrentHashMap() else mutableMapOf()
+    }
+
+    private fun createMessageList(): MutableList<Message> {
+        return if (isConcurrent) synchronizedList(mutableListOf()) else mutableListOf()
+    }
+
     /**
-     * Get a list of all the messages and messages that have been recorded, across all classes and class members.
+     * Identifies a message that [add] has already recorded for this class member.
      */
-    private val all: List<Message>
-        get() =
-            mutableListOf<Message>().apply {
-                addAll(classMessages.filter { it.value.isNotEmpty() }.flatMap { it.value })
-                addAll(memberMessages.filter { it.value.isNotEmpty() }.flatMap { it.value })
+    private data class EntryKey(
+        val className: String,
+        val memberName: String,
+        val lineNumber: Int,
+        val message: String
+    )
+
+    /**
+     * Identifies messages that [sorted] will only return once.
+     */
+    private data class DistinctKey(
+        val severity: Severity,
+        val className: String,
+        val memberName: String,
+        val message: String
+    )
+
+    private data class MemberKey(
+        val className: String,
+        val memberName: String,
+        val descriptor: String
+    )
+
+    /**
+     * The distinct messages in this collection, and how many there are of each severity.
+     */
+    private interface OrderedMessages {
+        fun add(key: DistinctKey, message: Message)
+        fun sorted(): List<Message>
+        fun countOf(severity: Severity): Int
+    }
+
+    /**
+     * Only one thread adds these messages, and so we need no locks.
+     * Equal messages are sorted in the order that we added them.
+     */
+    private class SequentialMessages : OrderedMessages {
+        private val entries = TreeSet(ENTRY_ORDER)
+        private val distinctKeys = HashSet<DistinctKey>()
+        private val severityCounts = IntArray(Severity.values().size)
+        private var nextSequence: Long = 0
+        private var cachedMessages: List<Message>? = null
+
+        override fun add(key: DistinctKey, message: Message) {
+            if (distinctKeys.add(key)) {
+                entries.add(OrderedEntry(message, nextSequence++))
+                ++severityCounts[message.severity.ordinal]
+                cachedMessages = null
+            }
+        }
+
+        override fun sorted(): List<Message> {
+            return cachedMessages ?: entries.map(OrderedEntry::message).apply {
+                cachedMessages = this
+            }
+        }
+
+        override fun countOf(severity: Severity): Int = severityCounts[severity.ordinal]
+    }
+
+    /**
+     * Several threads can add these messages at once, in no particular order.
+     * [CONCURRENT_ORDER] breaks every tie between distinct messages, and so
+     * the skip-list can hold the messages themselves.
+     */
+    private class ConcurrentMessages : OrderedMessages {
+        private val messages = ConcurrentSkipListSet(CONCURRENT_ORDER)
+        private val distinctMessages = ConcurrentHashMap<DistinctKey, Message>()
+        private val severityCounts = AtomicIntegerArray(Severity.values().size)
+
+        override fun add(key: DistinctKey, message: Message) {
+            distinctMessages.compute(key) { _, existing ->
+                when {
+                    existing == null -> {
+                        messages.add(message)
+                        severityCounts.incrementAndGet(message.severity.ordinal)
+                        message
+                    }
+
+                    // Threads could add equivalent messages in any order,
+                    // and so we must always keep the same one of them.
+                    CONCURRENT_ORDER.compare(message, existing) < 0 -> {
+                        messages.add(message)
+                        messages.remove(existing)
+                        message
+                    }
+
+                    else -> existing
+                }
             }
+        }
+
+        override fun sorted(): List<Message> = messages.toList()
 
+        override fun countOf(severity: Severity): Int = severityCounts.get(severity.ordinal)
+    }
+
+    /**
+     * The [sequence] number breaks any ties between messages,
+     * so that equal messages are sorted in the order that we
+     * added them.
+     */
+    private class OrderedEntry(val message: Message, val sequence: Long)
+
+    private companion object {
+        private val ORDER = compareBy<Message>(
+            { it.severity.precedence },
+            { it.location.sourceFile },
+            { it.location.lineNumber },
+            { it.location.className },
+            { it.location.memberName }
+        )
+
+        /**
+         * Messages are added in no particular order when several threads are
+         * analysing classes at once, and so we must break any ties explicitly.
+         */
+        private val CONCURRENT_ORDER = ORDER.thenBy { it.location.descriptor }.thenBy { it.message }
+
+        private val ENTRY_ORDER = compareBy<OrderedEntry, Message>(ORDER, OrderedEntry::message)
+            .thenBy(OrderedEntry::sequence)
+    }
 }
@@ -2,18 +2,54 @@ package net.corda.djvm.references
 
 import net.corda.djvm.code.impl.OBJECT_NAME
 import net.corda.djvm.utilities.loggerFor
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentSkipListMap
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * Representation of a hierarchy of classes.
+ *
+ * @property isConcurrent Whether several threads can update this hierarchy at once.
+ * A concurrent hierarchy iterates over its classes in order of their names.
  */
 class ClassHierarchy(
         private val classModule: ClassModule,
-        private val memberModule: MemberModule
+        private val memberModule: MemberModule,
+        private val isConcurrent: Boolean
 ) : Iterable<ClassRepresentation> {
+    constructor(classModule: ClassModule, memberModule: MemberModule) : this(classModule, memberModule, false)
 
-    private val classMap = mutableMapOf<String, ClassRepresentation>()
+    private val classMap: MutableMap<String, ClassRepresentation> = if (isConcurrent) {
+        ConcurrentSkipListMap()
+    } else {
+        mutableMapOf()
+    }
+
+    private val ancestorMap: MutableMap<String, Ancestors> = createMap()
+
+    /**
+     * The names of the classes whose cached ancestors were computed by
+     * looking up each class name, whether or not that class was present.
+     */
+    private val dependentMap: MutableMap<String, MutableSet<String>> = createMap()
+
+    /**
+     * Counts the classes added, so that we never cache ancestors
+     * that were computed while another class was being added.
+     */
+    private val modifications = AtomicLong()
 
-    private val ancestorMap = mutableMapOf<String, List<ClassRepresentation>>()
+    private fun <K, V> createMap(): MutableMap<K, V> = if (isConcurrent) {
+        ConcurrentHashMap()
+    } else {
+        mutableMapOf()
+    }
+
+    private fun createSet(): MutableSet<String> = if (isConcurrent) {
+        ConcurrentHashMap.newKeySet()
+    } else {
+        mutableSetOf()
+    }
 
     /**
      * Add class to the class hierarchy. If the class already exists in the class hierarchy, the existing record will
@@ -23,8 +59,12 @@ class ClassHierarchy(
      */
     fun add(clazz: ClassRepresentation) {
         logger.trace("Adding type {} to hierarchy...", clazz)
-        ancestorMap.clear()
         classMap[clazz.name] = clazz
+        modifications.incrementAndGet()
+
+        // Only discard the ancestors that depend upon this class.
+        ancestorMap.remove(clazz.name)
+        dependentMap.remove(clazz.name)?.forEach { ancestorMap.remove(it) }
     }
 
     /**
@@ -80,7 +120,7 @@ class ClassHierarchy(
             // Special instruction to retrieve length of array
             return Member(0, className, memberName, descriptor, "")
         }
-        return findAncestors(get(className)).plus(get(OBJECT_NAME))
+        return findAncestors(get(className)).classes.plus(get(OBJECT_NAME))
                 .asSequence()
                 .filterNotNull()
                 .mapNotNull { memberModule.getFromClass(it, memberName, descriptor) }
@@ -93,17 +133,56 @@ class ClassHierarchy(
     /**
      * Get all ancestors of a class.
      */
-    private fun findAncestors(clazz: ClassRepresentation?): List<ClassRepresentation> {
+    private fun findAncestors(clazz: ClassRepresentation?): Ancestors {
         if (clazz == null) {
-            return emptyList()
+            return Ancestors.EMPTY
+        }
+        ancestorMap[clazz.name]?.also { return it }
+
+        val modificationCount = modifications.get()
+        val classes = mutableListOf(clazz)
+        val dependencies = mutableSetOf(clazz.name)
+        if (clazz.superClass.isNotEmpty()) {
+            addAncestors(clazz.superClass, classes, dependencies)
+        }
+        for (interfaceName in clazz.interfaces) {
+            addAncestors(interfaceName, classes, dependencies)
         }
-        return ancestorMap.getOrPut(clazz.name) {
-            val ancestors = mutableListOf(clazz)
-            if (clazz.superClass.isNotEmpty()) {
-                ancestors.addAll(findAncestors(get(clazz.superClass)))
+        val ancestors = Ancestors(classes, dependencies)
+
+        if (modificationCount == modifications.get()) {
+            for (dependency in dependencies) {
+                dependentMap.getOrPut(dependency, ::createSet).add(clazz.name)
+            }
+            ancestorMap[clazz.name] = ancestors
+            if (modificationCount != modifications.get()) {
+                ancestorMap.remove(clazz.name)
             }
-            ancestors.addAll(clazz.interfaces.flatMap { findAncestors(get(it)) })
-            ancestors
+        }
+        return ancestors
+    }
+
+    private fun addAncestors(
+        className: String,
+        classes: MutableList<ClassRepresentation>,
+        dependencies: MutableSet<String>
+    ) {
+        val ancestors = findAncestors(get(className))
+        classes.addAll(ancestors.classes)
+        dependencies.add(className)
+        dependencies.addAll(ancestors.dependencies)
+    }
+
+    /**
+     * A class's ancestors, and the names of every class that
+     * we needed to look up to find them.
+     */
+    private class Ancestors(
+        val classes: List<ClassRepresentation>,
+        val dependencies: Set<String>
+    ) {
+        companion object {
+            val EMPTY = Ancestors(emptyList(), emptySet())
         }
     }
 
@@ -2,43 +2,60 @@ package net.corda.djvm.references
 
 import net.corda.djvm.CordaInternal
 import net.corda.djvm.analysis.SourceLocation
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * Map from member references to all discovered call-sites / field accesses for each reference.
+ *
+ * @property isConcurrent Whether several threads can add references at once.
  */
 @CordaInternal
-class ReferenceMap : Iterable<EntityReference> {
+class ReferenceMap(private val isConcurrent: Boolean) : Iterable<EntityReference> {
+    constructor() : this(false)
 
     private val queueOfReferences = ConcurrentLinkedQueue<EntityReference>()
 
-    private val locationsPerReference: MutableMap<EntityReference, MutableSet<SourceLocation>> = hashMapOf()
+    private val locationsPerReference: MutableMap<EntityReference, MutableSet<SourceLocation>> = createMap()
 
-    private val referencesPerLocation: MutableMap<String, MutableSet<ReferenceWithLocation>> = hashMapOf()
+    private val referenceCount = AtomicInteger()
+
+    /**
+     * The references made from within each class, keyed by that class's name.
+     * We only create [ReferenceWithLocation] objects for a class when someone
+     * asks for them.
+     */
+    private val referencesPerClass: MutableMap<String, ClassReferences> = createMap()
 
     /**
      * The number of references in the map.
      */
-    var numberOfReferences = 0
-        private set
+    val numberOfReferences: Int
+        get() = referenceCount.get()
 
     /**
      * Add source location association to a target member.
      */
     fun add(target: EntityReference, location: SourceLocation) {
-        locationsPerReference.getOrPut(target) {
+        val isNewLocation = locationsPerReference.computeIfAbsent(target) {
             queueOfReferences.add(target)
-            numberOfReferences += 1
-            hashSetOf()
+            referenceCount.incrementAndGet()
+            createSet()
         }.add(location)
-        ReferenceWithLocation(location, target).apply {
-            referencesPerLocation.getOrPut(location.key()) { hashSetOf() }.add(this)
-            if (location.memberName.isNotBlank()) {
-                referencesPerLocation.getOrPut(key(location.className)) { hashSetOf() }.add(this)
-            }
+        if (isNewLocation) {
+            referencesPerClass.computeIfAbsent(location.className) { ClassReferences() }.add(location, target)
         }
     }
 
+    private fun <K, V> createMap(): MutableMap<K, V> {
+        return if (isConcurrent) ConcurrentHashMap() else hashMapOf()
+    }
+
+    private fun <T> createSet(): MutableSet<T> {
+        return if (isConcurrent) ConcurrentHashMap.newKeySet() else hashSetOf()
+    }
+
     /**
      * Get call-sites and field access locations associated with a target member.
      */
@@ -51,7 +68,7 @@ class ReferenceMap : Iterable<EntityReference> {
     fun referencesFromLocation(
             className: String, memberName: String = "", descriptor: String = ""
     ): Set<ReferenceWithLocation> {
-        return referencesPerLocation.getOrElse(key(className, memberName, descriptor)) { emptySet() }
+        return referencesPerClass[className]?.select(memberName, descriptor) ?: emptySet()
     }
 
     /**
@@ -68,13 +85,36 @@ class ReferenceMap : Iterable<EntityReference> {
         }
     }
 
-    companion object {
-
-        private fun SourceLocation.key() = key(this.className, this.memberName, this.descriptor)
-
-        private fun key(className: String, memberName: String = "", descriptor: String = "") =
-                "$className.$memberName:$descriptor"
+    /**
+     * Every distinct location within a class that references something, along
+     * with the entity that it references. These are held in parallel lists so
+     * that adding a reference doesn't allocate anything new.
+     */
+    private class ClassReferences {
+        private val locations = ArrayList<SourceLocation>()
+        private val references = ArrayList<EntityReference>()
+
+        @Synchronized
+        fun add(location: SourceLocation, reference: EntityReference) {
+            locations.add(location)
+            references.add(reference)
+        }
 
+        /**
+         * Selects the references made from the given class member,
+         * or every reference from this class if no member is given.
+         */
+        @Synchronized
+        fun select(memberName: String, descriptor: String): Set<ReferenceWithLocation> {
+            val isWholeClass = memberName.isEmpty() && descriptor.isEmpty()
+            val result = LinkedHashSet<ReferenceWithLocation>()
+            for (i in locations.indices) {
+                val location = locations[i]
+                if (isWholeClass || (location.memberName == memberName && location.descriptor == descriptor)) {
+                    result.add(ReferenceWithLocation(location, references[i]))
+                }
+            }
+            return result
+        }
     }
-
 }
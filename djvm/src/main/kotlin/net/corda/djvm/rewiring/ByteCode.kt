@@ -15,7 +15,7 @@ import java.security.CodeSource
 class ByteCode(
     val bytes: ByteArray,
     val source: CodeSource?,
-    private val flags: Int
+    internal val flags: Int
 ) {
     constructor(bytes: ByteArray, source: CodeSource?) : this(bytes, source, 0)
 
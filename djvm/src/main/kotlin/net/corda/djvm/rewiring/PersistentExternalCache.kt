@@ -0,0 +1,593 @@
+package net.corda.djvm.rewiring
+
+import net.corda.djvm.ConfigurationOptions
+import net.corda.djvm.SandboxConfiguration
+import net.corda.djvm.analysis.AnalysisConfiguration.Companion.SANDBOX_PREFIX
+import net.corda.djvm.code.DefinitionProvider
+import net.corda.djvm.code.Emitter
+import net.corda.djvm.rules.Rule
+import net.corda.djvm.utilities.loggerFor
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.DataOutputStream
+import java.io.IOException
+import java.net.URI
+import java.net.URL
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.channels.FileChannel.MapMode.READ_ONLY
+import java.nio.channels.FileLock
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption.ATOMIC_MOVE
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+import java.nio.file.StandardOpenOption.CREATE
+import java.nio.file.StandardOpenOption.READ
+import java.nio.file.StandardOpenOption.TRUNCATE_EXISTING
+import java.nio.file.StandardOpenOption.WRITE
+import java.security.CodeSource
+import java.security.MessageDigest
+import java.security.cert.Certificate
+import java.util.AbstractMap
+import java.util.AbstractMap.SimpleImmutableEntry
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.CRC32
+import kotlin.streams.toList
+
+/**
+ * An [ExternalCache] that persists generated byte-code into a local append-only
+ * file, so that a restarted process can define its sandbox classes again without
+ * analysing or rewriting them. The file's existing records are memory-mapped when
+ * the cache is opened, and each class's byte-code is only copied out of this
+ * mapping when it is first requested.
+ *
+ * Every record carries its own length and CRC32 checksum, and so any record that
+ * was only partially written when the process died is discarded when the file is
+ * next opened. The file's header contains a [fingerprint] of the DJVM itself and
+ * of the sandbox's configuration, and the file is discarded completely whenever
+ * this fingerprint changes. Each record also contains a stamp for the jar or
+ * directory that its source class came from, and the record is ignored if that
+ * source has since been modified. Byte-code from any other kind of source is
+ * never cached.
+ *
+ * The file is compacted once it grows beyond [maxBytes], which evicts the
+ * least recently used entries.
+ *
+ * @property file The location of the cache file.
+ * @property fingerprint Identifies the DJVM and sandbox configuration that generated this byte-code.
+ * @property maxBytes The maximum size of the cache file.
+ */
+class PersistentExternalCache @Throws(IOException::class) constructor(
+    val file: Path,
+    val fingerprint: String,
+    val maxBytes: Long
+) : AbstractMap<ByteCodeKey, ByteCode>(), ConcurrentMap<ByteCodeKey, ByteCode>, Closeable {
+    @Throws(IOException::class)
+    constructor(file: Path, fingerprint: String) : this(file, fingerprint, DEFAULT_MAX_BYTES)
+
+    private val cache = ConcurrentHashMap<ByteCodeKey, Entry>()
+    private val clock = AtomicLong()
+    private val lock = Any()
+    private var channel: FileChannel
+    private var fileLock: FileLock
+    private var fileSize: Long
+
+    init {
+        require(maxBytes in MIN_MAX_BYTES..Int.MAX_VALUE) {
+            "Maximum cache size must be between $MIN_MAX_BYTES and ${Int.MAX_VALUE} bytes"
+        }
+        file.toAbsolutePath().parent?.also { Files.createDirectories(it) }
+        channel = FileChannel.open(file, CREATE, READ, WRITE)
+        fileLock = channel.tryLock() ?: run {
+            channel.close()
+            throw IOException("Cache file $file is already in use")
+        }
+        fileSize = try {
+            load()
+        } catch (e: Exception) {
+            fileLock.release()
+            channel.close()
+            throw e
+        }
+    }
+
+    /**
+     * Reads every valid record from the existing file, and returns the
+     * length of the file's valid prefix. The file is recreated if its
+     * header does not match, and compacted if it contains stale records.
+     */
+    private fun load(): Long {
+        val header = createHeader()
+        val length = channel.size()
+        if (length < header.size || length > maxBytes || !hasHeader(header)) {
+            if (length > 0) {
+                logger.info("Discarding incompatible cache file {}", file)
+            }
+            return reset(header)
+        }
+
+        val buffer = channel.map(READ_ONLY, 0, length)
+        var position = header.size
+        var obsolete = 0L
+        scan@ while (position + RECORD_HEADER_SIZE <= length) {
+            val recordLength = buffer.getInt(position)
+            val checksum = buffer.getInt(position + Integer.BYTES)
+            val payloadStart = position + RECORD_HEADER_SIZE
+            if (recordLength < 0 || payloadStart + recordLength > length
+                || checksum != checksumOf(buffer, payloadStart, recordLength)) {
+                break
+            }
+
+            val record = buffer.duplicate()
+            record.limit(payloadStart + recordLength).position(payloadStart)
+            val type = record.get()
+            val key = ByteCodeKey(readString(record), readString(record))
+            val previous = when (type) {
+                PUT_RECORD -> {
+                    val entry = readEntry(key, record, RECORD_HEADER_SIZE + recordLength)
+                    entry.lastUsed = clock.incrementAndGet()
+                    if (entry.stamp != NO_STAMP && entry.stamp == stampOf(key.source)) {
+                        cache.put(key, entry)
+                    } else {
+                        obsolete += entry.recordSize
+                        cache.remove(key)
+                    }
+                }
+                REMOVE_RECORD -> {
+                    obsolete += RECORD_HEADER_SIZE + recordLength
+                    cache.remove(key)
+                }
+                else -> break@scan
+            }
+            obsolete += previous?.recordSize ?: 0
+            position = payloadStart + recordLength
+        }
+
+        if (position < length) {
+            logger.warn("Truncating cache file {} after {} bytes", file, position)
+            channel.truncate(position.toLong())
+            channel.force(true)
+        }
+        logger.info("Loaded {} classes from cache file {}", cache.size, file)
+        return if (obsolete > 0) {
+            compact(position - header.size - obsolete)
+        } else {
+            channel.position(position.toLong())
+            position.toLong()
+        }
+    }
+
+    private fun hasHeader(header: ByteArray): Boolean {
+        val existing = ByteBuffer.allocate(header.size)
+        while (existing.hasRemaining() && channel.read(existing, existing.position().toLong()) >= 0) {
+            // Keep reading until we have the whole header.
+        }
+        return existing.array().contentEquals(header)
+    }
+
+    private fun createHeader(): ByteArray {
+        return ByteArrayOutputStream().use { bytes ->
+            DataOutputStream(bytes).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(FORMAT_VERSION)
+                writeString(output, fingerprint)
+            }
+            bytes.toByteArray()
+        }
+    }
+
+    private fun readEntry(key: ByteCodeKey, record: ByteBuffer, recordSize: Int): Entry {
+        val location = readString(record)
+        val stamp = record.long
+        val flags = record.int
+        val byteCount = record.int
+        val bytes = record.slice()
+        bytes.limit(byteCount)
+        return Entry(key, location, stamp, flags, recordSize, bytes, null)
+    }
+
+    /**
+     * Replaces the cache file with an empty one, atomically.
+     */
+    private fun reset(header: ByteArray): Long {
+        cache.clear()
+        return rewrite(header, emptyList())
+    }
+
+    /**
+     * Rewrites the cache file with only its live entries, after first
+     * evicting the least recently used entries to shrink it below
+     * [COMPACTION_RATIO] of its maximum size.
+     */
+    private fun compact(liveBytes: Long): Long {
+        val header = createHeader()
+        val target = (maxBytes * COMPACTION_RATIO).toLong()
+        var totalBytes = header.size + liveBytes
+        val survivors = cache.values.sortedBy(Entry::lastUsed).filter { entry ->
+            if (totalBytes > target) {
+                cache.remove(entry.key, entry)
+                totalBytes -= entry.recordSize
+                false
+            } else {
+                true
+            }
+        }
+        logger.info("Compacting cache file {}, keeping {} classes", file, survivors.size)
+        return rewrite(header, survivors)
+    }
+
+    private fun rewrite(header: ByteArray, survivors: List<Entry>): Long {
+        val records = survivors.map { entry ->
+            // Detach each entry from the old memory-mapped file.
+            entry.byteCode.let { byteCode -> createRecord(entry.key, byteCode, entry.stamp) to byteCode }
+        }
+
+        val tempFile = file.resolveSibling(file.fileName.toString() + TEMP_SUFFIX)
+        var size = header.size.toLong()
+        FileChannel.open(tempFile, CREATE, WRITE, TRUNCATE_EXISTING).use { output ->
+            writeFully(output, ByteBuffer.wrap(header))
+            for ((record, _) in records) {
+                size += writeFully(output, ByteBuffer.wrap(record))
+            }
+            output.force(true)
+        }
+
+        fileLock.release()
+        channel.close()
+        Files.move(tempFile, file, ATOMIC_MOVE, REPLACE_EXISTING)
+        channel = FileChannel.open(file, READ, WRITE)
+        fileLock = channel.tryLock() ?: throw IOException("Cache file $file is already in use")
+        channel.position(size)
+
+        for ((i, entry) in survivors.withIndex()) {
+            val (record, byteCode) = records[i]
+            val detached = Entry(entry.key, entry.location, entry.stamp, entry.flags, record.size, null, byteCode)
+            detached.lastUsed = entry.lastUsed
+            cache.replace(entry.key, entry, detached)
+        }
+        return size
+    }
+
+    private fun append(record: ByteArray) {
+        if (fileSize + record.size > maxBytes) {
+            fileSize = compact(cache.values.fold(0L) { total, entry -> total + entry.recordSize })
+        }
+        fileSize += writeFully(channel, ByteBuffer.wrap(record))
+    }
+
+    private fun createRecord(key: ByteCodeKey, byteCode: ByteCode, stamp: Long): ByteArray {
+        val payload = ByteArrayOutputStream(byteCode.bytes.size + 256).use { bytes ->
+            DataOutputStream(bytes).use { output ->
+                output.writeByte(PUT_RECORD.toInt())
+                writeString(output, key.className)
+                writeString(output, key.source)
+                writeString(output, byteCode.source?.location?.toString() ?: "")
+                output.writeLong(stamp)
+                output.writeInt(byteCode.flags)
+                output.writeInt(byteCode.bytes.size)
+                output.write(byteCode.bytes)
+            }
+            bytes.toByteArray()
+        }
+        return withRecordHeader(payload)
+    }
+
+    private fun createRemoveRecord(key: ByteCodeKey): ByteArray {
+        val payload = ByteArrayOutputStream().use { bytes ->
+            DataOutputStream(bytes).use { output ->
+                output.writeByte(REMOVE_RECORD.toInt())
+                writeString(output, key.className)
+                writeString(output, key.source)
+            }
+            bytes.toByteArray()
+        }
+        return withRecordHeader(payload)
+    }
+
+    override fun get(key: ByteCodeKey): ByteCode? {
+        return cache[key]?.let { entry ->
+            entry.lastUsed = clock.incrementAndGet()
+            entry.byteCode
+        }
+    }
+
+    override fun containsKey(key: ByteCodeKey): Boolean = cache.containsKey(key)
+
+    override val size: Int get() = cache.size
+
+    override val entries: MutableSet<MutableMap.MutableEntry<ByteCodeKey, ByteCode>>
+        get() = this.cache.values.mapTo(LinkedHashSet()) { entry -> SimpleImmutableEntry(entry.key, entry.byteCode) }
+
+    override fun put(key: ByteCodeKey, value: ByteCode): ByteCode? = synchronized(lock) {
+        val stamp = stampOf(key.source)
+        if (stamp == NO_STAMP) {
+            // We could not tell later whether this byte-code is still valid.
+            null
+        } else {
+            val record = createRecord(key, value, stamp)
+            append(record)
+            val location = value.source?.location?.toString() ?: ""
+            val entry = Entry(key, location, stamp, value.flags, record.size, null, value)
+            entry.lastUsed = clock.incrementAndGet()
+            cache.put(key, entry)?.byteCode
+        }
+    }
+
+    override fun putIfAbsent(key: ByteCodeKey, value: ByteCode): ByteCode? = synchronized(lock) {
+        get(key) ?: run {
+            put(key, value)
+            null
+        }
+    }
+
+    override fun remove(key: ByteCodeKey): ByteCode? = synchronized(lock) {
+        cache[key]?.let { entry ->
+            append(createRemoveRecord(key))
+            cache.remove(key)
+            entry.byteCode
+        }
+    }
+
+    override fun remove(key: ByteCodeKey, value: ByteCode): Boolean = synchronized(lock) {
+        if (cache[key]?.byteCode === value) {
+            remove(key)
+            true
+        } else {
+            false
+        }
+    }
+
+    override fun replace(key: ByteCodeKey, oldValue: ByteCode, newValue: ByteCode): Boolean = synchronized(lock) {
+        if (cache[key]?.byteCode === oldValue) {
+            put(key, newValue)
+            true
+        } else {
+            false
+        }
+    }
+
+    override fun replace(key: ByteCodeKey, value: ByteCode): ByteCode? = synchronized(lock) {
+        if (cache.containsKey(key)) {
+            put(key, value)
+        } else {
+            null
+        }
+    }
+
+    override fun clear() = synchronized(lock) {
+        fileSize = reset(createHeader())
+    }
+
+    /**
+     * Flushes the cache file to storage and releases it.
+     */
+    @Throws(IOException::class)
+    override fun close() = synchronized(lock) {
+        if (channel.isOpen) {
+            channel.force(true)
+            fileLock.release()
+            channel.close()
+        }
+    }
+
+    /**
+     * A cached [ByteCode] object, which may still be inside the memory-mapped file.
+     */
+    private class Entry(
+        val key: ByteCodeKey,
+        val location: String,
+        val stamp: Long,
+        val flags: Int,
+        val recordSize: Int,
+        private val mapped: ByteBuffer?,
+        loaded: ByteCode?
+    ) {
+        @Volatile
+        var lastUsed: Long = 0
+
+        @Volatile
+        private var loaded: ByteCode? = loaded
+
+        val byteCode: ByteCode get() = loaded ?: synchronized(this) {
+            loaded ?: run {
+                val bytes = ByteArray(mapped!!.remaining())
+                mapped.duplicate().get(bytes)
+                ByteCode(bytes, toCodeSource(location), flags).also { loaded = it }
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * The default maximum size of the cache file, which is 512 MB.
+         */
+        const val DEFAULT_MAX_BYTES: Long = 512L * 1024 * 1024
+
+        private const val MIN_MAX_BYTES: Long = 64L * 1024
+        private const val MAGIC = 0x444a564d
+        private const val FORMAT_VERSION = 1
+        private const val RECORD_HEADER_SIZE = Integer.BYTES * 2
+        private const val PUT_RECORD: Byte = 1
+        private const val REMOVE_RECORD: Byte = 2
+        private const val COMPACTION_RATIO = 0.75
+        private const val TEMP_SUFFIX = ".tmp"
+        private const val NO_STAMP = -1L
+        private const val SNAPSHOT_SUFFIX = "-SNAPSHOT"
+
+        private val logger = loggerFor<PersistentExternalCache>()
+
+        /**
+         * Stamps for the directories that we have already scanned.
+         */
+        private val directoryStamps = ConcurrentHashMap<String, Long>()
+
+        /**
+         * Identifies the DJVM library itself. A release of the DJVM is identified by
+         * the version in its jar's manifest. Otherwise we must hash the DJVM's own
+         * classes, because a development build can change without its version.
+         */
+        private val djvmIdentity: String by lazy {
+            val version = SandboxConfiguration::class.java.`package`?.implementationVersion
+            if (version != null && !version.endsWith(SNAPSHOT_SUFFIX)) {
+                version
+            } else {
+                val digest = MessageDigest.getInstance("SHA-256")
+                // The DJVM's Java and Kotlin classes may have been compiled into different directories.
+                listOf(SandboxConfiguration::class.java, ConfigurationOptions::class.java)
+                    .mapTo(LinkedHashSet(), ::codeLocationOf)
+                    .forEach { location -> hashContents(location, digest) }
+                toHex(digest.digest())
+            }
+        }
+
+        /**
+         * Creates a fingerprint for the byte-code that a [SandboxConfiguration] with these
+         * rules, emitters and definition providers would generate. Any other options that
+         * affect the generated byte-code must be included too.
+         *
+         * @throws IllegalStateException if we cannot identify the DJVM library.
+         */
+        @JvmStatic
+        fun fingerprintOf(
+            rules: List<Rule>,
+            emitters: List<Emitter>,
+            definitionProviders: List<DefinitionProvider>,
+            vararg options: Any?
+        ): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            val update = { value: Any? -> digest.update((value.toString() + '\n').toByteArray()) }
+            update(djvmIdentity)
+            rules.forEach { update(it::class.java.name) }
+            emitters.forEach { update(it::class.java.name) }
+            definitionProviders.forEach { update(it::class.java.name) }
+            options.forEach(update)
+            return toHex(digest.digest())
+        }
+
+        /**
+         * Creates a fingerprint for the byte-code that this [SandboxConfiguration] generates.
+         * This includes its whitelist, its sandbox prefix, and the current contents of its
+         * analysis configuration's sources, such as the bootstrap jar.
+         *
+         * @throws IllegalStateException if we cannot identify the DJVM library.
+         */
+        @JvmStatic
+        fun fingerprintOf(configuration: SandboxConfiguration): String = with(configuration) {
+            val analysis = analysisConfiguration
+            fingerprintOf(
+                rules,
+                emitters,
+                definitionProviders,
+                batchCostAccounting,
+                SANDBOX_PREFIX,
+                analysis.analyzeAnnotations,
+                analysis.whitelist.items.sorted(),
+                analysis.stitchedAnnotations.sorted(),
+                analysis.supportingClassLoader.getAllURLs().map { url -> "$url:${stampOf(url.toString())}" }
+            )
+        }
+
+        /**
+         * Identifies the current contents of a source jar from its size and timestamp,
+         * and the contents of a source directory from the names, sizes and timestamps
+         * of its files. We only scan each directory once, and so we assume that a
+         * directory does not change while the DJVM is using it.
+         */
+        private fun stampOf(source: String): Long {
+            return try {
+                val path = Paths.get(URI(source))
+                when {
+                    Files.isRegularFile(path) -> fileStampOf(path)
+                    Files.isDirectory(path) -> directoryStamps.computeIfAbsent(source) { directoryStampOf(path) }
+                    else -> NO_STAMP
+                }
+            } catch (e: Exception) {
+                NO_STAMP
+            }
+        }
+
+        private fun fileStampOf(path: Path): Long {
+            return (Files.size(path) * 31) xor Files.getLastModifiedTime(path).toMillis()
+        }
+
+        private fun directoryStampOf(directory: Path): Long {
+            val digest = MessageDigest.getInstance("SHA-256")
+            filesUnder(directory).forEach { file ->
+                digest.update(directory.relativize(file).toString().toByteArray())
+                digest.update(ByteBuffer.allocate(java.lang.Long.BYTES).putLong(0, fileStampOf(file)))
+            }
+            val stamp = ByteBuffer.wrap(digest.digest()).long
+            return if (stamp == NO_STAMP) 0 else stamp
+        }
+
+        private fun codeLocationOf(type: Class<*>): Path {
+            val location = type.protectionDomain.codeSource?.location
+                ?: throw IllegalStateException("Cannot locate ${type.name}, and so cannot identify this DJVM")
+            return Paths.get(location.toURI())
+        }
+
+        private fun hashContents(location: Path, digest: MessageDigest) {
+            val files = if (Files.isDirectory(location)) filesUnder(location) else listOf(location)
+            for (file in files) {
+                digest.update(location.relativize(file).toString().toByteArray())
+                digest.update(Files.readAllBytes(file))
+            }
+        }
+
+        private fun filesUnder(directory: Path): List<Path> {
+            return Files.walk(directory).use { paths ->
+                paths.filter { Files.isRegularFile(it) }.sorted().toList()
+            }
+        }
+
+        private fun toHex(bytes: ByteArray): String = bytes.joinToString("") { String.format("%02x", it) }
+
+        @Suppress("cast_never_succeeds")
+        private fun toCodeSource(location: String): CodeSource? {
+            return if (location.isEmpty()) {
+                null
+            } else {
+                CodeSource(URL(location), null as? Array<Certificate>)
+            }
+        }
+
+        private fun withRecordHeader(payload: ByteArray): ByteArray {
+            val record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.size)
+            record.putInt(payload.size)
+            record.putInt(checksumOf(ByteBuffer.wrap(payload), 0, payload.size))
+            record.put(payload)
+            return record.array()
+        }
+
+        private fun checksumOf(buffer: ByteBuffer, offset: Int, length: Int): Int {
+            val crc = CRC32()
+            val data = buffer.duplicate()
+            data.limit(offset + length).position(offset)
+            crc.update(data)
+            return crc.value.toInt()
+        }
+
+        private fun writeString(output: DataOutputStream, value: String) {
+            val bytes = value.toByteArray()
+            output.writeInt(bytes.size)
+            output.write(bytes)
+        }
+
+        private fun readString(buffer: ByteBuffer): String {
+            val bytes = ByteArray(buffer.int)
+            buffer.get(bytes)
+            return String(bytes)
+        }
+
+        private fun writeFully(channel: FileChannel, buffer: ByteBuffer): Int {
+            var written = 0
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer)
+            }
+            return written
+        }
+    }
+}
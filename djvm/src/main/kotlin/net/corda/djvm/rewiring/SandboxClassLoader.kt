@@ -7,6 +7,7 @@ import net.corda.djvm.analysis.AnalysisContext
 import net.corda.djvm.analysis.SyntheticResolver.Companion.getDJVMSynthetic
 import net.corda.djvm.analysis.SyntheticResolver.Companion.getDJVMSyntheticOwner
 import net.corda.djvm.analysis.SyntheticResolver.Companion.isDJVMSynthetic
+import net.corda.djvm.analysis.impl.ClassAndMemberVisitor
 import net.corda.djvm.code.impl.asPackagePath
 import net.corda.djvm.code.impl.asResourcePath
 import net.corda.djvm.execution.SandboxRuntimeException
@@ -135,6 +136,25 @@ class SandboxClassLoader private constructor(
         parentClassLoader
     )
 
+    /**
+     * Creates an empty [SandboxClassLoader] like [copyEmpty], except that
+     * it analyses classes independently of this [SandboxClassLoader]. This
+     * allows several copies to load classes in parallel, provided that the
+     * [AnalysisContext] is [concurrent][AnalysisContext.isConcurrent].
+     * @param newContext The [AnalysisContext] to use for the child classloader.
+     */
+    fun copyIsolated(newContext: AnalysisContext) = SandboxClassLoader(
+        analysisConfiguration,
+        supportingClassLoader,
+        accessor.copy(),
+        newContext,
+        byteCodeCache,
+        externalCache,
+        throwableClass,
+        annotationClass,
+        parentClassLoader
+    )
+
     /**
      * Returns an instance of [Function] that can transform a
      * basic Java object into its equivalent inside the sandbox.
@@ -838,10 +858,12 @@ class SandboxClassLoader private constructor(
                 analysisConfiguration = analysisConfiguration,
                 supportingClassLoader = supportingClassLoader,
                 accessor = Accessor(
-                    RuleValidator(
-                        rules = configuration.rules,
-                        configuration = analysisConfiguration
-                    ),
+                    Supplier<ClassAndMemberVisitor> {
+                        RuleValidator(
+                            rules = configuration.rules,
+                            configuration = analysisConfiguration
+                        )
+                    },
                     ClassRewriter(configuration, supportingClassLoader)
                 ),
                 context = parentClassLoader?.context ?: AnalysisContext.fromConfiguration(analysisConfiguration),
@@ -45,7 +45,9 @@ class ClassRewriter(
             configuration = analysisConfig,
             remapper = remapper,
             definitionProviders = configuration.definitionProviders,
-            emitters = configuration.emitters
+            emitters = configuration.emitters,
+            batchCosts = configuration.batchCostAccounting,
+            stringConstants = readStringConstants(reader)
         )
         mutator.analyze(reader, context, options = SKIP_FRAMES)
         return ByteCode(writer.toByteArray(), codeSource, mutator.flags)
@@ -60,5 +62,24 @@ class ClassRewriter(
 
     private companion object {
         private val logger = loggerFor<ClassRewriter>()
+        private const val CONSTANT_STRING_TAG = 8
+
+        /**
+         * Read every string constant from the class's constant pool.
+         * Each constant in this list will have a slot in the sandbox
+         * class's pool of sandbox strings.
+         */
+        private fun readStringConstants(reader: ClassReader): List<String> {
+            val buffer = CharArray(reader.maxStringLength)
+            val constants = LinkedHashSet<String>()
+            for (index in 1 until reader.itemCount) {
+                // The second slot of a long or double constant has no offset.
+                val offset = reader.getItem(index)
+                if (offset > 0 && reader.readByte(offset - 1) == CONSTANT_STRING_TAG) {
+                    constants.add(reader.readUTF8(offset, buffer))
+                }
+            }
+            return constants.toList()
+        }
     }
 }
@@ -4,21 +4,31 @@ import net.corda.djvm.code.Emitter
 import net.corda.djvm.code.EmitterContext
 import net.corda.djvm.code.Instruction
 import net.corda.djvm.code.impl.DJVM_NAME
+import net.corda.djvm.code.impl.EmitterContextImpl
 import net.corda.djvm.code.impl.emit
 import net.corda.djvm.code.instructions.ConstantInstruction
 
 /**
  * Ensure that [String] constants loaded from the Constants
- * Pool are wrapped into [sandbox.java.lang.String].
+ * Pool are wrapped into [sandbox.java.lang.String]. Classes
+ * with a pool of sandbox strings only need to intern each
+ * of their constants once, and afterwards read them from
+ * the pool directly.
  */
 object StringConstantWrapper : Emitter {
     override fun emit(context: EmitterContext, instruction: Instruction) = context.emit {
         if (instruction is ConstantInstruction) {
-            when (instruction.value) {
+            val value = instruction.value
+            when (value) {
                 is String -> {
-                    invokeStatic(DJVM_NAME, "intern", "(Ljava/lang/String;)Lsandbox/java/lang/String;", false)
+                    val poolIndex = (context as EmitterContextImpl).getStringPoolIndex(value)
+                    if (poolIndex >= 0) {
+                        loadPooledString(context.resolve(context.clazz.name), poolIndex)
+                    } else {
+                        invokeStatic(DJVM_NAME, "intern", "(Ljava/lang/String;)Lsandbox/java/lang/String;", false)
+                    }
                 }
             }
         }
     }
-}
\ No newline at end of file
+}
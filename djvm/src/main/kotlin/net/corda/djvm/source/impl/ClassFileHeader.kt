@@ -0,0 +1,117 @@
+package net.corda.djvm.source.impl
+
+import java.io.BufferedInputStream
+import java.io.DataInputStream
+import java.io.IOException
+import java.io.InputStream
+
+private const val CLASS_FILE_MAGIC = 0xCAFEBABE.toInt()
+
+private const val CONSTANT_UTF8 = 1
+private const val CONSTANT_INTEGER = 3
+private const val CONSTANT_FLOAT = 4
+private const val CONSTANT_LONG = 5
+private const val CONSTANT_DOUBLE = 6
+private const val CONSTANT_CLASS = 7
+private const val CONSTANT_STRING = 8
+private const val CONSTANT_FIELDREF = 9
+private const val CONSTANT_METHODREF = 10
+private const val CONSTANT_INTERFACE_METHODREF = 11
+private const val CONSTANT_NAME_AND_TYPE = 12
+private const val CONSTANT_METHOD_HANDLE = 15
+private const val CONSTANT_METHOD_TYPE = 16
+private const val CONSTANT_DYNAMIC = 17
+private const val CONSTANT_INVOKE_DYNAMIC = 18
+private const val CONSTANT_MODULE = 19
+private const val CONSTANT_PACKAGE = 20
+
+/**
+ * A class's access flags, its name, its superclass and the interfaces that
+ * it implements. This is just enough information for ASM's common superclass
+ * algorithm, and it all lives at the start of the class file.
+ */
+internal class ClassFileHeader(
+    val access: Int,
+    val internalName: String,
+    val superName: String?,
+    val interfaces: List<String>
+)
+
+/**
+ * Reads a [ClassFileHeader] from the start of a class file. We must walk
+ * the constant pool to reach the header, but we can stop reading as soon as
+ * we have the list of interfaces. The fields, methods and attributes that
+ * follow are never read.
+ */
+@Throws(IOException::class)
+internal fun readHeader(input: InputStream): ClassFileHeader {
+    val data = DataInputStream(BufferedInputStream(input))
+    if (data.readInt() != CLASS_FILE_MAGIC) {
+        throw IOException("Not a class file")
+    }
+    data.skipFully(4) // minor_version, major_version
+
+    // We only need the Utf8 entries that the class and interfaces name,
+    // so keep the raw Class indices and decode their names afterwards.
+    val poolSize = data.readUnsignedShort()
+    val utf8 = arrayOfNulls<String>(poolSize)
+    val classNames = IntArray(poolSize)
+    var index = 1
+    while (index < poolSize) {
+        val tag = data.readUnsignedByte()
+        when (tag) {
+            CONSTANT_UTF8 -> utf8[index] = data.readUTF()
+            CONSTANT_CLASS -> classNames[index] = data.readUnsignedShort()
+            CONSTANT_STRING,
+            CONSTANT_METHOD_TYPE,
+            CONSTANT_MODULE,
+            CONSTANT_PACKAGE -> data.skipFully(2)
+            CONSTANT_METHOD_HANDLE -> data.skipFully(3)
+            CONSTANT_INTEGER,
+            CONSTANT_FLOAT,
+            CONSTANT_FIELDREF,
+            CONSTANT_METHODREF,
+            CONSTANT_INTERFACE_METHODREF,
+            CONSTANT_NAME_AND_TYPE,
+            CONSTANT_DYNAMIC,
+            CONSTANT_INVOKE_DYNAMIC -> data.skipFully(4)
+            CONSTANT_LONG,
+            CONSTANT_DOUBLE -> {
+                data.skipFully(8)
+                // These constants occupy two slots in the pool.
+                ++index
+            }
+            else -> throw IOException("Unknown constant pool tag $tag")
+        }
+        ++index
+    }
+
+    fun className(classIndex: Int): String {
+        return utf8.getOrNull(classNames.getOrElse(classIndex) { 0 })
+            ?: throw IOException("Invalid class index $classIndex")
+    }
+
+    val access = data.readUnsignedShort()
+    val internalName = className(data.readUnsignedShort())
+    val superName = data.readUnsignedShort().let { if (it == 0) null else className(it) }
+    val interfaceCount = data.readUnsignedShort()
+    val interfaces = ArrayList<String>(interfaceCount)
+    for (i in 0 until interfaceCount) {
+        interfaces.add(className(data.readUnsignedShort()))
+    }
+    return ClassFileHeader(access, internalName, superName, interfaces)
+}
+
+private fun DataInputStream.skipFully(count: Int) {
+    var remaining = count
+    while (remaining > 0) {
+        val skipped = skipBytes(remaining)
+        if (skipped <= 0) {
+            // Check whether we have reached the end of the stream.
+            readByte()
+            --remaining
+        } else {
+            remaining -= skipped
+        }
+    }
+}
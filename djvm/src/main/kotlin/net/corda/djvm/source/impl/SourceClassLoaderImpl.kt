@@ -6,7 +6,6 @@ import net.corda.djvm.analysis.ClassResolver
 import net.corda.djvm.analysis.SourceLocation
 import net.corda.djvm.analysis.SyntheticResolver.Companion.getDJVMSyntheticOwner
 import net.corda.djvm.analysis.SyntheticResolver.Companion.isDJVMSynthetic
-import net.corda.djvm.analysis.impl.ClassAndMemberVisitor.Companion.API_VERSION
 import net.corda.djvm.code.impl.asPackagePath
 import net.corda.djvm.code.impl.asResourcePath
 import net.corda.djvm.messages.Message
@@ -19,10 +18,6 @@ import net.corda.djvm.source.SourceClassLoader
 import net.corda.djvm.source.UserSource
 import net.corda.djvm.utilities.loggerFor
 import org.objectweb.asm.ClassReader
-import org.objectweb.asm.ClassReader.SKIP_CODE
-import org.objectweb.asm.ClassReader.SKIP_DEBUG
-import org.objectweb.asm.ClassReader.SKIP_FRAMES
-import org.objectweb.asm.ClassVisitor
 import java.io.IOException
 import java.net.URL
 import java.security.AccessController.doPrivileged
@@ -33,6 +28,7 @@ import java.util.Collections.emptyEnumeration
 import java.util.Collections.unmodifiableSet
 import java.util.Enumeration
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
 
 /**
  * Customizable class loader that allows the user to specify explicitly additional JARs and directories to scan.
@@ -56,6 +52,18 @@ class SourceClassLoaderImpl(
     }
 
     private val headers = ConcurrentHashMap<String, ClassHeader>()
+    private val headerHits = LongAdder()
+    private val headerMisses = LongAdder()
+
+    /**
+     * The number of times that we have found a [ClassHeader] in this class loader's cache.
+     */
+    val headerCacheHits: Long get() = headerHits.sum()
+
+    /**
+     * The number of [ClassHeader]s that this class loader has had to parse for itself.
+     */
+    val headerCacheMisses: Long get() = headerMisses.sum()
 
     // Java-friendly constructors
     constructor(classResolver: ClassResolver, userSource: UserSource, bootstrap: ApiSource?)
@@ -147,16 +155,25 @@ class SourceClassLoaderImpl(
     }
 
     private fun loadClassHeader(name: String, internalName: String): ClassHeader {
-        return synchronized(getClassLoadingLock(name)) {
-            headers[internalName] ?: (parent as? SourceClassLoaderImpl)?.let { parentClassLoader ->
-                try {
-                    parentClassLoader.loadClassHeader(name, internalName)
-                } catch (_: ClassNotFoundException) {
-                    null
-                }
-            } ?: loadBootstrapClassHeader(name, internalName)
-              ?: findClassHeader(name, internalName)
+        return findClassHeader(name, internalName) ?: throw ClassNotFoundException(name)
+    }
+
+    /**
+     * Search for this class's header in our own cache, and then ask our parent. We
+     * only parse the class file if neither of us has seen this class before. We
+     * do not hold any locks while parsing, which means that two threads could both
+     * parse the same class. However, both threads will then use whichever header
+     * reached our cache first.
+     */
+    private fun findClassHeader(name: String, internalName: String): ClassHeader? {
+        val header = headers[internalName]
+        if (header != null) {
+            headerHits.increment()
+            return header
         }
+        return (parent as? SourceClassLoaderImpl)?.findClassHeader(name, internalName)
+            ?: loadBootstrapClassHeader(name, internalName)
+            ?: loadUserClassHeader(name, internalName)
     }
 
     private fun loadBootstrapClassHeader(name: String, internalName: String): ClassHeader? {
@@ -165,52 +182,45 @@ class SourceClassLoaderImpl(
         }
     }
 
-    private fun findClassHeader(name: String, internalName: String): ClassHeader {
-        val url = userSource.findResource("$internalName.class") ?: throw ClassNotFoundException(name)
-        return defineHeader(name, internalName, url)
+    private fun loadUserClassHeader(name: String, internalName: String): ClassHeader? {
+        return userSource.findResource("$internalName.class")?.let { url ->
+            defineHeader(name, internalName, url)
+        }
     }
 
     private fun defineHeader(name: String, internalName: String, url: URL): ClassHeader {
-        val byteCode = try {
-            url.unversioned.openStream().use {
-                it.readBytes()
-            }
+        val header = try {
+            url.unversioned.openStream().use(::readHeader)
         } catch (e: IOException) {
             throw ClassNotFoundException(name, e)
         }
-        return defineHeader(name, internalName, byteCode)
-    }
-
-    private fun defineHeader(name: String, internalName: String, byteCode: ByteArray): ClassHeader {
-        val visitor = HeaderVisitor()
-        ClassReader(byteCode).accept(visitor, SKIP_FRAMES or SKIP_DEBUG or SKIP_CODE)
 
-        if (internalName != visitor.internalName) {
+        if (internalName != header.internalName) {
             throw NoClassDefFoundError(internalName)
         }
+        headerMisses.increment()
 
-        return ClassHeaderImpl(
+        val classHeader = ClassHeaderImpl(
             classLoader = this,
             name = name,
             internalName = internalName,
-            superclass = visitor.superName?.run {
+            superclass = header.superName?.run {
                 try {
                     loadClassHeader(asPackagePath, this)
                 } catch (e: ClassNotFoundException) {
                     throw NoClassDefFoundError(e.message).apply { initCause(e) }
                 }
             },
-            interfaces = visitor.interfaces.mapTo(LinkedHashSet()) {
+            interfaces = header.interfaces.mapTo(LinkedHashSet()) {
                 try {
                     loadClassHeader(it.asPackagePath, it)
                 } catch (e: ClassNotFoundException) {
                     throw NoClassDefFoundError(e.message).apply { initCause(e) }
                 }
             },
-            flags = visitor.access
-        ).also { header ->
-            headers[internalName] = header
-        }
+            flags = header.access
+        )
+        return headers.putIfAbsent(internalName, classHeader) ?: classHeader
     }
 
     private fun findBootstrapResource(name: String): URL? {
@@ -265,33 +275,6 @@ class SourceClassLoaderImpl(
         resources.add(userSource.findResources(name))
         return CompoundEnumeration(resources)
     }
-
-    /**
-     * Internal [ClassVisitor] that reads only a class's superclass
-     * and the interfaces that it implements. This allows us to
-     * implement just enough reflection-like functionality for ASM's
-     * common superclass algorithm without loading these classes.
-     */
-    private class HeaderVisitor : ClassVisitor(API_VERSION) {
-        var access: Int = 0
-        var internalName: String = ""
-        var superName: String? = null
-        val interfaces = mutableListOf<String>()
-
-        override fun visit(
-            version: Int,
-            access: Int,
-            name: String,
-            signature: String?,
-            superName: String?,
-            interfaces: Array<String>?
-        ) {
-            this.access = access
-            this.internalName = name
-            this.superName = superName
-            Collections.addAll(this.interfaces, *interfaces ?: emptyArray())
-        }
-    }
 }
 
 /**
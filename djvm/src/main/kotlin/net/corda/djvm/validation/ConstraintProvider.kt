@@ -49,7 +49,10 @@ open class ConstraintProvider(
      * Construct for representing a rule constraint.
      */
     fun DraftMessage.always() {
-        context.messages.add(Message(message, severity, context.location))
+        val location = context.location
+        if (context.messages.accepts(severity, location.className)) {
+            context.messages.add(Message(message, severity, location))
+        }
     }
 
     /**
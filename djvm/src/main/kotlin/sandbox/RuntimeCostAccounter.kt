@@ -81,3 +81,23 @@ fun recordInvocation() = runtimeCosts.invocationCost.increment()
  * The accumulated cost of exception throws that have been made.
  */
 fun recordThrow() = runtimeCosts.throwCost.increment()
+
+/**
+ * Record the jumps, invocations and throws for an entire basic block,
+ * c.f. [CostBatcher][net.corda.djvm.code.impl.CostBatcher].
+ *
+ * @param jumps The number of jumps in the block.
+ * @param invocations The number of method calls in the block.
+ * @param throws The number of throws in the block.
+ */
+fun recordCosts(jumps: Int, invocations: Int, throws: Int) {
+    if (invocations > 0) {
+        runtimeCosts.invocationCost.increment(invocations)
+    }
+    if (jumps > 0) {
+        runtimeCosts.jumpCost.increment(jumps)
+    }
+    if (throws > 0) {
+        runtimeCosts.throwCost.increment(throws)
+    }
+}
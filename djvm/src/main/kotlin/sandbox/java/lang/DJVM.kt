@@ -8,6 +8,7 @@ import net.corda.djvm.analysis.AnalysisConfiguration.Companion.JVM_EXCEPTIONS
 import net.corda.djvm.analysis.SyntheticResolver.Companion.getDJVMSynthetic
 import net.corda.djvm.code.impl.CLASS_RESET_NAME
 import net.corda.djvm.execution.SandboxRuntimeException
+import net.corda.djvm.execution.StackTraceMode
 import net.corda.djvm.rewiring.SandboxClassLoader
 import net.corda.djvm.rules.RuleViolationError
 import net.corda.djvm.rules.implementation.*
@@ -43,12 +44,14 @@ import java.security.AccessController
 import java.security.PrivilegedAction
 import java.security.PrivilegedActionException
 import java.security.PrivilegedExceptionAction
+import java.util.concurrent.ConcurrentHashMap
 import java.util.function.BiConsumer
 
 /**
  * Register this class's reset method to flush any static data.
  * We will preserve [systemClassLoader] and [sandboxThrowable]
- * because these do not change.
+ * because these do not change, and likewise the types that we
+ * have already marshalled and the constructors for their exceptions.
  */
 @Suppress("FunctionName")
 @JvmSynthetic
@@ -87,46 +90,172 @@ fun Any.unsandbox(): Any {
     }
 }
 
+/**
+ * How [sandbox] should marshal each type of object, e.g. [MARSHAL_STRING].
+ * These values are [Integer] constants rather than functions because a
+ * [ClassValue] is stored inside each [Class] that it is asked about, and
+ * must not keep this sandbox's classloader reachable from outside it.
+ */
+private class DJVMMarshallerTable : ClassValue<kotlin.Int>() {
+    @Suppress("RemoveRedundantQualifierName")
+    override fun computeValue(type: Class<*>): kotlin.Int {
+        return when {
+            type === kotlin.String::class.java -> MARSHAL_STRING
+            type === kotlin.Char::class.javaObjectType -> MARSHAL_CHAR
+            type === kotlin.Long::class.javaObjectType -> MARSHAL_LONG
+            type === kotlin.Int::class.javaObjectType -> MARSHAL_INT
+            type === kotlin.Short::class.javaObjectType -> MARSHAL_SHORT
+            type === kotlin.Byte::class.javaObjectType -> MARSHAL_BYTE
+            type === kotlin.Float::class.javaObjectType -> MARSHAL_FLOAT
+            type === kotlin.Double::class.javaObjectType -> MARSHAL_DOUBLE
+            type === kotlin.Boolean::class.javaObjectType -> MARSHAL_BOOLEAN
+            kotlin.Enum::class.java.isAssignableFrom(type) -> MARSHAL_ENUM
+            kotlin.Throwable::class.java.isAssignableFrom(type) -> MARSHAL_THROWABLE
+            java.math.BigInteger::class.java.isAssignableFrom(type) -> MARSHAL_BIG_INTEGER
+            java.math.BigDecimal::class.java.isAssignableFrom(type) -> MARSHAL_BIG_DECIMAL
+            java.util.Date::class.java.isAssignableFrom(type) -> MARSHAL_DATE
+            java.io.InputStream::class.java.isAssignableFrom(type) -> MARSHAL_INPUT_STREAM
+            java.nio.ByteBuffer::class.java.isAssignableFrom(type) -> MARSHAL_BYTE_BUFFER
+            type === java.util.UUID::class.java -> MARSHAL_UUID
+            type === java.time.Duration::class.java -> MARSHAL_DURATION
+            type === java.time.Instant::class.java -> MARSHAL_INSTANT
+            type === java.time.LocalDate::class.java -> MARSHAL_LOCAL_DATE
+            type === java.time.LocalDateTime::class.java -> MARSHAL_LOCAL_DATE_TIME
+            type === java.time.LocalTime::class.java -> MARSHAL_LOCAL_TIME
+            type === java.time.MonthDay::class.java -> MARSHAL_MONTH_DAY
+            type === java.time.OffsetDateTime::class.java -> MARSHAL_OFFSET_DATE_TIME
+            type === java.time.OffsetTime::class.java -> MARSHAL_OFFSET_TIME
+            type === java.time.Period::class.java -> MARSHAL_PERIOD
+            type === java.time.Year::class.java -> MARSHAL_YEAR
+            type === java.time.YearMonth::class.java -> MARSHAL_YEAR_MONTH
+            type === java.time.ZonedDateTime::class.java -> MARSHAL_ZONED_DATE_TIME
+            java.time.ZoneId::class.java.isAssignableFrom(type) -> MARSHAL_ZONE_ID
+
+            // Primitive arrays need no marshalling, and so reach the
+            // default case and enter the sandbox without being copied.
+            type.isArray && !type.componentType.isPrimitive -> MARSHAL_ARRAY
+            Member::class.java.isAssignableFrom(type) -> MARSHAL_MEMBER
+
+            /**
+             * [Class] and [Constructor] are white-listed inside the sandbox,
+             * which means that they're used "as is". So prevent the user from
+             * passing bad instances into the sandbox through the front door!
+             *
+             * Objects which implement [kotlin.Annotation] are almost certainly
+             * dynamic proxies, so keep them out of the sandbox too!
+             */
+            type === Class::class.java || kotlin.Annotation::class.java.isAssignableFrom(type) -> MARSHAL_FORBIDDEN
+            ClassLoader::class.java.isAssignableFrom(type) -> MARSHAL_CLASSLOADER
+            inputMarshallers.containsKey(type) -> MARSHAL_CONFIGURED
+
+            // Default behaviour...
+            else -> MARSHAL_NONE
+        }
+    }
+}
+
+private const val MARSHAL_NONE = 0
+private const val MARSHAL_STRING = 1
+private const val MARSHAL_CHAR = 2
+private const val MARSHAL_LONG = 3
+private const val MARSHAL_INT = 4
+private const val MARSHAL_SHORT = 5
+private const val MARSHAL_BYTE = 6
+private const val MARSHAL_FLOAT = 7
+private const val MARSHAL_DOUBLE = 8
+private const val MARSHAL_BOOLEAN = 9
+private const val MARSHAL_ENUM = 10
+private const val MARSHAL_THROWABLE = 11
+private const val MARSHAL_BIG_INTEGER = 12
+private const val MARSHAL_BIG_DECIMAL = 13
+private const val MARSHAL_DATE = 14
+private const val MARSHAL_INPUT_STREAM = 15
+private const val MARSHAL_UUID = 16
+private const val MARSHAL_DURATION = 17
+private const val MARSHAL_INSTANT = 18
+private const val MARSHAL_LOCAL_DATE = 19
+private const val MARSHAL_LOCAL_DATE_TIME = 20
+private const val MARSHAL_LOCAL_TIME = 21
+private const val MARSHAL_MONTH_DAY = 22
+private const val MARSHAL_OFFSET_DATE_TIME = 23
+private const val MARSHAL_OFFSET_TIME = 24
+private const val MARSHAL_PERIOD = 25
+private const val MARSHAL_YEAR = 26
+private const val MARSHAL_YEAR_MONTH = 27
+private const val MARSHAL_ZONED_DATE_TIME = 28
+private const val MARSHAL_ZONE_ID = 29
+private const val MARSHAL_ARRAY = 30
+private const val MARSHAL_MEMBER = 31
+private const val MARSHAL_FORBIDDEN = 32
+private const val MARSHAL_CLASSLOADER = 33
+private const val MARSHAL_CONFIGURED = 34
+private const val MARSHAL_BYTE_BUFFER = 35
+
+private val marshallerTable = DJVMMarshallerTable()
+
+/**
+ * Extra marshalling functions from this sandbox's [net.corda.djvm.SandboxConfiguration].
+ */
+private val inputMarshallers = SandboxRuntimeContext.instance.configuration.inputMarshallers
+
+/**
+ * When this sandbox's exceptions should capture their stack traces.
+ */
+val stackTraceMode: StackTraceMode = SandboxRuntimeContext.instance.configuration.stackTraceMode
+
 @Throws(ClassNotFoundException::class)
 fun Any.sandbox(): Any {
     @Suppress("RemoveRedundantQualifierName")
-    return when(this) {
-        is kotlin.String -> String.toDJVM(this)
-        is kotlin.Char -> Character.toDJVM(this)
-        is kotlin.Long -> Long.toDJVM(this)
-        is kotlin.Int -> Integer.toDJVM(this)
-        is kotlin.Short -> Short.toDJVM(this)
-        is kotlin.Byte -> Byte.toDJVM(this)
-        is kotlin.Float -> Float.toDJVM(this)
-        is kotlin.Double -> Double.toDJVM(this)
-        is kotlin.Boolean -> Boolean.toDJVM(this)
-        is kotlin.Enum<*> -> toDJVMEnum()
-        is kotlin.Throwable -> toDJVMThrowable()
-        is java.math.BigInteger -> toDJVMBigInteger()
-        is java.math.BigDecimal -> sandbox.java.math.BigDecimal(unscaledValue().toDJVMBigInteger(), scale())
-        is java.util.Date -> Date(time)
-        is java.io.InputStream -> InputStream.toDJVM(this)
-        is java.util.UUID -> UUID(mostSignificantBits, leastSignificantBits)
-        is java.time.Duration -> sandbox.java.time.Duration.ofSeconds(seconds, nano.toLong())
-        is java.time.Instant -> sandbox.java.time.Instant.ofEpochSecond(epochSecond, nano.toLong())
-        is java.time.LocalDate -> toDJVM()
-        is java.time.LocalDateTime -> sandbox.java.time.LocalDateTime.of(toLocalDate().toDJVM(), toLocalTime().toDJVM())
-        is java.time.LocalTime -> toDJVM()
-        is java.time.MonthDay -> sandbox.java.time.MonthDay.of(monthValue, dayOfMonth)
-        is java.time.OffsetDateTime -> sandbox.java.time.OffsetDateTime.of(toLocalDateTime().toDJVM(), offset.toDJVM() as sandbox.java.time.ZoneOffset)
-        is java.time.OffsetTime -> sandbox.java.time.OffsetTime.of(toLocalTime().toDJVM(), offset.toDJVM() as sandbox.java.time.ZoneOffset)
-        is java.time.Period -> sandbox.java.time.Period.of(years, months, days)
-        is java.time.Year -> sandbox.java.time.Year.of(value)
-        is java.time.YearMonth -> sandbox.java.time.YearMonth.of(year, monthValue)
-        is java.time.ZonedDateTime -> sandbox.java.time.ZonedDateTime.createDJVM(
-            toLocalDateTime().toDJVM(),
-            offset.toDJVM() as sandbox.java.time.ZoneOffset,
-            zone.toDJVM()
-        )
-        is java.time.ZoneId -> sandbox.java.time.ZoneId.of(String.toDJVM(id))
-        is Array<*> -> toDJVMArray()
-        is Member ->
-            if (systemClassLoader.contains(declaringClass)) {
+    return when (marshallerTable.get(javaClass)) {
+        MARSHAL_STRING -> String.toDJVM(this as kotlin.String)
+        MARSHAL_CHAR -> Character.toDJVM(this as kotlin.Char)
+        MARSHAL_LONG -> Long.toDJVM(this as kotlin.Long)
+        MARSHAL_INT -> Integer.toDJVM(this as kotlin.Int)
+        MARSHAL_SHORT -> Short.toDJVM(this as kotlin.Short)
+        MARSHAL_BYTE -> Byte.toDJVM(this as kotlin.Byte)
+        MARSHAL_FLOAT -> Float.toDJVM(this as kotlin.Float)
+        MARSHAL_DOUBLE -> Double.toDJVM(this as kotlin.Double)
+        MARSHAL_BOOLEAN -> Boolean.toDJVM(this as kotlin.Boolean)
+        MARSHAL_ENUM -> (this as kotlin.Enum<*>).toDJVMEnum()
+        MARSHAL_THROWABLE -> (this as kotlin.Throwable).toDJVMThrowable()
+        MARSHAL_BIG_INTEGER -> (this as java.math.BigInteger).toDJVMBigInteger()
+        MARSHAL_BIG_DECIMAL -> with(this as java.math.BigDecimal) {
+            sandbox.java.math.BigDecimal(unscaledValue().toDJVMBigInteger(), scale())
+        }
+        MARSHAL_DATE -> Date((this as java.util.Date).time)
+        MARSHAL_INPUT_STREAM -> InputStream.toDJVM(this as java.io.InputStream)
+        MARSHAL_BYTE_BUFFER -> (this as java.nio.ByteBuffer).toDJVMByteBuffer()
+        MARSHAL_UUID -> with(this as java.util.UUID) { UUID(mostSignificantBits, leastSignificantBits) }
+        MARSHAL_DURATION -> with(this as java.time.Duration) {
+            sandbox.java.time.Duration.ofSeconds(seconds, nano.toLong())
+        }
+        MARSHAL_INSTANT -> with(this as java.time.Instant) {
+            sandbox.java.time.Instant.ofEpochSecond(epochSecond, nano.toLong())
+        }
+        MARSHAL_LOCAL_DATE -> (this as java.time.LocalDate).toDJVM()
+        MARSHAL_LOCAL_DATE_TIME -> (this as java.time.LocalDateTime).toDJVM()
+        MARSHAL_LOCAL_TIME -> (this as java.time.LocalTime).toDJVM()
+        MARSHAL_MONTH_DAY -> with(this as java.time.MonthDay) { sandbox.java.time.MonthDay.of(monthValue, dayOfMonth) }
+        MARSHAL_OFFSET_DATE_TIME -> with(this as java.time.OffsetDateTime) {
+            sandbox.java.time.OffsetDateTime.of(toLocalDateTime().toDJVM(), offset.toDJVM() as sandbox.java.time.ZoneOffset)
+        }
+        MARSHAL_OFFSET_TIME -> with(this as java.time.OffsetTime) {
+            sandbox.java.time.OffsetTime.of(toLocalTime().toDJVM(), offset.toDJVM() as sandbox.java.time.ZoneOffset)
+        }
+        MARSHAL_PERIOD -> with(this as java.time.Period) { sandbox.java.time.Period.of(years, months, days) }
+        MARSHAL_YEAR -> sandbox.java.time.Year.of((this as java.time.Year).value)
+        MARSHAL_YEAR_MONTH -> with(this as java.time.YearMonth) { sandbox.java.time.YearMonth.of(year, monthValue) }
+        MARSHAL_ZONED_DATE_TIME -> with(this as java.time.ZonedDateTime) {
+            sandbox.java.time.ZonedDateTime.createDJVM(
+                toLocalDateTime().toDJVM(),
+                offset.toDJVM() as sandbox.java.time.ZoneOffset,
+                zone.toDJVM()
+            )
+        }
+        MARSHAL_ZONE_ID -> (this as java.time.ZoneId).toDJVM()
+        MARSHAL_ARRAY -> (this as Array<*>).toDJVMArray()
+        MARSHAL_MEMBER ->
+            if (systemClassLoader.contains((this as Member).declaringClass)) {
                 when(this) {
                     is Constructor<*> -> sandbox.java.lang.reflect.DJVM.toDJVM(this)
                     is Method -> sandbox.java.lang.reflect.DJVM.toDJVM(this)
@@ -136,17 +265,10 @@ fun Any.sandbox(): Any {
             } else {
                 fail("Cannot sandbox $this")
             }
-
-        /**
-         * [Class] and [Constructor] are white-listed inside the sandbox,
-         * which means that they're used "as is". So prevent the user from
-         * passing bad instances into the sandbox through the front door!
-         *
-         * Objects which implement [kotlin.Annotation] are almost certainly
-         * dynamic proxies, so keep them out of the sandbox too!
-         */
-        is Class<*>, is kotlin.Annotation -> fail("Cannot sandbox $this")
-        is ClassLoader -> fail("Cannot sandbox a ClassLoader")
+        MARSHAL_FORBIDDEN -> fail("Cannot sandbox $this")
+        MARSHAL_CLASSLOADER -> fail("Cannot sandbox a ClassLoader")
+        MARSHAL_CONFIGURED -> inputMarshallers.getValue(javaClass).apply(this)
+            ?: fail("Cannot sandbox $this as null")
 
         // Default behaviour...
         else -> this
@@ -182,51 +304,21 @@ fun kotlin.Throwable.escapeSandbox(): kotlin.Throwable {
 
 private fun Throwable.escapeSandbox(): kotlin.Throwable {
     val escapingCause = cause?.escapeSandbox()
-    val sandboxedName = javaClass.name
     return try {
         val escaping = if (Type.getInternalName(javaClass) in JVM_EXCEPTIONS) {
             val escapingMessage = String.fromDJVM(message)
             // We map these exceptions to their equivalent JVM classes.
             when {
                 this is sandbox.java.lang.reflect.InvocationTargetException ->
-                    InvocationTargetException::class.java.getPrivilegedConstructor(kotlin.Throwable::class.java, kotlin.String::class.java)
-                        .newInstance(escapingCause, escapingMessage)
+                    InvocationTargetException(escapingCause, escapingMessage)
                 this is ExceptionInInitializerError && escapingCause != null ->
-                    java.lang.ExceptionInInitializerError::class.java.getPrivilegedConstructor(kotlin.Throwable::class.java)
-                        .newInstance(escapingCause)
+                    java.lang.ExceptionInInitializerError(escapingCause)
                 this is sandbox.java.security.PrivilegedActionException ->
-                    PrivilegedActionException::class.java.getPrivilegedConstructor(kotlin.Exception::class.java)
-                        .newInstance(escapingCause as kotlin.Exception)
-                else -> {
-                    @Suppress("unchecked_cast")
-                    val escapingType = loadBootstrapClass(sandboxedName.fromSandboxPackage()) as Class<out kotlin.Throwable>
-                    try {
-                        escapingType.getPrivilegedConstructor(kotlin.String::class.java, kotlin.Throwable::class.java)
-                            .newInstance(escapingMessage, escapingCause)
-                    } catch (_: NoSuchMethodException) {
-                        try {
-                            escapingType.getPrivilegedConstructor(kotlin.String::class.java)
-                                .newInstance(escapingMessage)
-                        } catch (_: NoSuchMethodException) {
-                            escapingType.getPrivilegedConstructor()
-                                .newInstance()
-                        }.apply {
-                            escapingCause?.run(::initCause)
-                        }
-                    }
-                }
+                    PrivilegedActionException(escapingCause as kotlin.Exception)
+                else -> javaClass.escapingType.newJavaThrowable(escapingMessage, escapingCause)
             }
         } else {
-            val escapingMessage = "$sandboxedName -> $message"
-            val sourceType = loadSandboxClass(getDJVMSynthetic(sandboxedName))
-            when {
-                RuntimeException::class.java.isAssignableFrom(sourceType) -> RuntimeException(escapingMessage)
-                kotlin.Exception::class.java.isAssignableFrom(sourceType) -> kotlin.Exception(escapingMessage)
-                Error::class.java.isAssignableFrom(sourceType) -> Error(escapingMessage)
-                else -> Throwable(escapingMessage)
-            }.apply {
-                escapingCause?.run(::initCause)
-            }
+            javaClass.escapingType.newJavaThrowable("${javaClass.name} -> $message", escapingCause)
         }
         escaping.apply {
             stackTrace = copyFromDJVM(this@escapeSandbox.stackTrace)
@@ -319,7 +411,16 @@ internal fun unsandbox(name: kotlin.String) = name.removePrefix(SANDBOX_PREFIX)
  * need to be reset before this classloader can be reused.
  */
 fun forReset(clazz: Class<*>, resetter: MethodHandle) {
-    SandboxRuntimeContext.instance.addToReset(clazz, resetter)
+    SandboxRuntimeContext.instance.addToReset(clazz, resetter, false)
+}
+
+/**
+ * Add this generated class to the reset list. Its reset method
+ * only assigns values to the class's own static fields, and so
+ * the sandbox can restore these values from a snapshot instead.
+ */
+fun forSnapshotReset(clazz: Class<*>, resetter: MethodHandle) {
+    SandboxRuntimeContext.instance.addToReset(clazz, resetter, true)
 }
 
 /**
@@ -328,7 +429,7 @@ fun forReset(clazz: Class<*>, resetter: MethodHandle) {
 fun forReset(lookup: Lookup, resetMethod: kotlin.String) {
     val resetType = MethodType.methodType(Void::class.javaPrimitiveType, BiConsumer::class.java)
     val resetClass = lookup.lookupClass()
-    SandboxRuntimeContext.instance.addToReset(resetClass, lookup.findStatic(resetClass, resetMethod, resetType))
+    SandboxRuntimeContext.instance.addToReset(resetClass, lookup.findStatic(resetClass, resetMethod, resetType), false)
 }
 
 /**
@@ -339,13 +440,32 @@ fun forReset(lookup: Lookup, resetMethod: kotlin.String) {
 private fun loadSandboxClass(name: kotlin.String): Class<*> = Class.forName(name, false, systemClassLoader)
 private fun loadBootstrapClass(name: kotlin.String): Class<*> = doPrivileged(DJVMBootstrapClassAction(name))
 
+/**
+ * The sandbox equivalents of the classes that [toDJVMType] and
+ * [fromDJVMType] have already loaded. Both maps only contain
+ * classes that this sandbox's classloader can already see.
+ */
+private val toDJVMTypes = ConcurrentHashMap<Class<*>, Class<*>>()
+private val fromDJVMTypes = ConcurrentHashMap<Class<*>, Class<*>>()
+
 @Throws(ClassNotFoundException::class)
-internal fun Class<*>.toDJVMType(): Class<*> = loadSandboxClass(systemClassLoader.resolveName(name))
+internal fun Class<*>.toDJVMType(): Class<*> {
+    return toDJVMTypes[this] ?: loadSandboxClass(systemClassLoader.resolveName(name)).let { djvmType ->
+        toDJVMTypes.putIfAbsent(this, djvmType) ?: djvmType
+    }
+}
 
 private inline fun <reified T> Class<*>.toDJVM(): Class<out T> = toDJVMType().asSubclass(T::class.java)
 
 @Throws(ClassNotFoundException::class)
 internal fun Class<*>.fromDJVMType(): Class<*> {
+    return fromDJVMTypes[this] ?: loadFromDJVMType().let { type ->
+        fromDJVMTypes.putIfAbsent(this, type) ?: type
+    }
+}
+
+@Throws(ClassNotFoundException::class)
+private fun Class<*>.loadFromDJVMType(): Class<*> {
     return if (isArray) {
         val componentName = name
         val idx = componentName.indexOf('L') + 1
@@ -363,13 +483,42 @@ private fun kotlin.String.fromSandboxPackage(): kotlin.String {
     }
 }
 
+/**
+ * Copies this array into the sandbox, and charges the sandbox
+ * for the new array exactly as [sandbox.recordArrayAllocation]
+ * would for an `anewarray` instruction.
+ */
 private fun Array<*>.toDJVMArray(): Array<*> {
+    val componentType = javaClass.componentType.toDJVMType()
+    sandbox.recordArrayAllocation(size, Type.getInternalName(componentType))
     @Suppress("unchecked_cast")
-    return (newInstance(javaClass.componentType.toDJVMType(), size) as Array<Any?>).also {
-        for ((i, item) in withIndex()) {
-            it[i] = item?.sandbox()
-        }
+    val array = newInstance(componentType, size) as Array<Any?>
+    for (i in indices) {
+        array[i] = this[i]?.sandbox()
+    }
+    return array
+}
+
+/**
+ * Creates a read-only [sandbox.java.nio.ByteBuffer] containing this
+ * buffer's remaining bytes. A buffer backed by an accessible array
+ * shares that array with the sandbox instead of copying it. Any other
+ * buffer's bytes are copied, and the sandbox is charged for a `byte[]`
+ * of that size, just as it would be for a `newarray` instruction.
+ */
+private fun java.nio.ByteBuffer.toDJVMByteBuffer(): sandbox.java.nio.ByteBuffer {
+    val view = if (hasArray()) {
+        sandbox.java.nio.ByteBuffer.wrap(array(), arrayOffset() + position(), remaining()).slice()
+    } else {
+        val length = remaining()
+        sandbox.recordArrayAllocation(length, 1)
+        val bytes = ByteArray(length)
+        duplicate().get(bytes)
+        sandbox.java.nio.ByteBuffer.wrap(bytes, 0, length)
     }
+    return view.asReadOnlyBuffer().order(
+        if (order() == java.nio.ByteOrder.LITTLE_ENDIAN) ByteOrder.LITTLE_ENDIAN else ByteOrder.BIG_ENDIAN
+    )
 }
 
 /**
@@ -458,6 +607,19 @@ fun intern(s: kotlin.String): String {
     return String.toDJVM(s).intern()
 }
 
+/**
+ * Intern a string constant once, and then remember it in its class's pool.
+ * The pool is null until the class initialiser has allocated it, and is
+ * reallocated each time the class is reset.
+ */
+fun intern(s: kotlin.String, pool: Array<String?>?, index: Int): String {
+    return if (pool == null) {
+        intern(s)
+    } else {
+        pool[index] ?: intern(s).also { pool[index] = it }
+    }
+}
+
 /**
  * Determine the platform's native [sandbox.java.nio.ByteOrder] value.
  */
@@ -588,9 +750,7 @@ fun fromDJVM(t: Throwable?): kotlin.Throwable {
                 throwable
             } else {
                 // Whereas the sandbox creates a synthetic throwable wrapper for these.
-                val wrapperClass = loadSandboxClass(getDJVMSynthetic(sandboxClass.name))
-                wrapperClass.getPrivilegedConstructor(sandboxThrowable)
-                    .newInstance(t) as kotlin.Throwable
+                sandboxClass.wrapperConstructor.newInstance(t) as kotlin.Throwable
             }
         } catch (e: kotlin.Exception) {
             e.toRuleViolationError()
@@ -665,80 +825,19 @@ private fun kotlin.Throwable.toDJVMThrowable(): Throwable {
 private fun Class<out Throwable>.createDJVMThrowable(t: kotlin.Throwable): Throwable {
     val cause = t.cause?.toDJVMThrowable()
     val message = String.toDJVM(t.message)
-    return try {
-        getPrivilegedConstructor(String::class.java, Throwable::class.java)
-            .newInstance(message, cause) as Throwable
-    } catch (_ : NoSuchMethodException) {
-        when {
-            /**
-             * For [InvocationTargetException], [java.lang.ExceptionInInitializerError]
-             * and [PrivilegedActionException] which don't allow their underlying cause
-             * to be reset.
-             */
-            t is InvocationTargetException ->
-                getPrivilegedConstructor(Throwable::class.java, String::class.java)
-                    .newInstance(cause, message) as Throwable
-            t is java.lang.ExceptionInInitializerError && cause != null ->
-                getPrivilegedConstructor(Throwable::class.java)
-                    .newInstance(cause) as Throwable
-            t is PrivilegedActionException ->
-                getPrivilegedConstructor(Exception::class.java)
-                    .newInstance(cause as Exception) as Throwable
-            else -> {
-                (try {
-                    getPrivilegedConstructor(String::class.java)
-                        .newInstance(message)
-                } catch (_: NoSuchMethodException) {
-                    getPrivilegedConstructor()
-                        .newInstance()
-                } as Throwable).apply {
-                    cause?.run(::initCause)
-                }
-            }
+    val factory = throwableFactory.select(cause)
+    return (factory.create(message, cause) as Throwable).apply {
+        if (cause != null && !factory.setsCause) {
+            initCause(cause)
         }
-    }.apply {
-        stackTrace = sanitiseToDJVM(t.stackTrace)
+        setJvmStackTrace(t)
         t.suppressed.forEach { sup ->
             addSuppressed(sup.toDJVMThrowable())
         }
     }
 }
-
 private fun Class<*>.createJavaThrowable(t: Throwable): kotlin.Throwable {
-    val cause = t.cause?.fromDJVM()
-    val message = String.fromDJVM(t.message)
-    return try {
-        getPrivilegedConstructor(kotlin.String::class.java, kotlin.Throwable::class.java)
-            .newInstance(message, cause) as kotlin.Throwable
-    } catch (_ : NoSuchMethodException) {
-        when {
-            /**
-             * For [sandbox.java.lang.reflect.InvocationTargetException], [ExceptionInInitializerError]
-             * and [sandbox.java.security.PrivilegedActionException] which don't allow their underlying
-             * cause to be reset.
-             */
-            t is sandbox.java.lang.reflect.InvocationTargetException ->
-                getPrivilegedConstructor(kotlin.Throwable::class.java, kotlin.String::class.java)
-                    .newInstance(cause, message) as kotlin.Throwable
-            t is ExceptionInInitializerError && cause != null ->
-                getPrivilegedConstructor(kotlin.Throwable::class.java)
-                    .newInstance(cause) as kotlin.Throwable
-            t is sandbox.java.security.PrivilegedActionException ->
-                getPrivilegedConstructor(kotlin.Exception::class.java)
-                    .newInstance(cause as kotlin.Exception) as kotlin.Throwable
-            else -> {
-                (try {
-                    getPrivilegedConstructor(kotlin.String::class.java)
-                        .newInstance(message)
-                } catch (_: NoSuchMethodException) {
-                    getPrivilegedConstructor()
-                        .newInstance()
-                } as kotlin.Throwable).apply {
-                    cause?.run(::initCause)
-                }
-            }
-        }
-    }.apply {
+    return newJavaThrowable(String.fromDJVM(t.message), t.cause?.fromDJVM()).apply {
         stackTrace = copyFromDJVM(t.stackTrace)
         t.suppressed.forEach { sup ->
             addSuppressed(fromDJVM(sup))
@@ -746,6 +845,149 @@ private fun Class<*>.createJavaThrowable(t: Throwable): kotlin.Throwable {
     }
 }
 
+private fun Class<*>.newJavaThrowable(message: kotlin.String?, cause: kotlin.Throwable?): kotlin.Throwable {
+    val factory = throwableFactory.select(cause)
+    return (factory.create(message, cause) as kotlin.Throwable).apply {
+        if (cause != null && !factory.setsCause) {
+            initCause(cause)
+        }
+    }
+}
+
+/**
+ * How to create each [kotlin.Throwable] and [Throwable] class that
+ * crosses the sandbox boundary. Exceptions are copied every time they
+ * enter or leave the sandbox, and so we only want to choose each
+ * class's constructor once. None of these values changes on reset.
+ */
+private val throwableFactories = ConcurrentHashMap<Class<*>, DJVMThrowableFactory>()
+private val escapingTypes = ConcurrentHashMap<Class<*>, Class<*>>()
+private val wrapperConstructors = ConcurrentHashMap<Class<*>, Constructor<*>>()
+
+private val Class<*>.throwableFactory: DJVMThrowableFactory
+    get() = throwableFactories[this] ?: createThrowableFactory().let { factory ->
+        throwableFactories.putIfAbsent(this, factory) ?: factory
+    }
+
+/**
+ * The JVM class that represents this sandbox exception
+ * when it escapes from the sandbox.
+ */
+private val Class<*>.escapingType: Class<*>
+    get() = escapingTypes[this] ?: loadEscapingType().let { type ->
+        escapingTypes.putIfAbsent(this, type) ?: type
+    }
+
+/**
+ * The constructor for the synthetic [kotlin.Throwable]
+ * that wraps instances of this sandbox exception.
+ */
+private val Class<*>.wrapperConstructor: Constructor<*>
+    get() = wrapperConstructors[this] ?: loadSandboxClass(getDJVMSynthetic(name)).let { wrapperClass ->
+        val constructor = wrapperClass.getPrivilegedConstructor(sandboxThrowable)
+        wrapperConstructors.putIfAbsent(this, constructor) ?: constructor
+    }
+
+private fun Class<*>.loadEscapingType(): Class<*> {
+    return if (Type.getInternalName(this) in JVM_EXCEPTIONS) {
+        loadBootstrapClass(name.fromSandboxPackage())
+    } else {
+        val sourceType = loadSandboxClass(getDJVMSynthetic(name))
+        when {
+            RuntimeException::class.java.isAssignableFrom(sourceType) -> RuntimeException::class.java
+            kotlin.Exception::class.java.isAssignableFrom(sourceType) -> kotlin.Exception::class.java
+            Error::class.java.isAssignableFrom(sourceType) -> Error::class.java
+            else -> kotlin.Throwable::class.java
+        }
+    }
+}
+
+/**
+ * Chooses which of this exception class's constructors we should use to copy
+ * an exception into or out of the sandbox. This is the only place where we
+ * search for these constructors, i.e. by trying them in turn.
+ */
+private fun Class<*>.createThrowableFactory(): DJVMThrowableFactory {
+    val isSandboxed = Throwable::class.java.isAssignableFrom(this)
+    val stringType = if (isSandboxed) String::class.java else kotlin.String::class.java
+    val throwableType = if (isSandboxed) Throwable::class.java else kotlin.Throwable::class.java
+    val messageCause = findPrivilegedConstructor(stringType, throwableType)
+    return if (messageCause != null) {
+        DJVMThrowableFactory(ARGS_MESSAGE_CAUSE, messageCause, null)
+    } else {
+        /**
+         * For [InvocationTargetException], [java.lang.ExceptionInInitializerError]
+         * and [PrivilegedActionException] which don't allow their underlying cause
+         * to be reset.
+         */
+        when {
+            (if (isSandboxed) sandbox.java.lang.reflect.InvocationTargetException::class.java
+                else InvocationTargetException::class.java).isAssignableFrom(this) ->
+                DJVMThrowableFactory(ARGS_CAUSE_MESSAGE, getPrivilegedConstructor(throwableType, stringType), null)
+            (if (isSandboxed) ExceptionInInitializerError::class.java
+                else java.lang.ExceptionInInitializerError::class.java).isAssignableFrom(this) ->
+                DJVMThrowableFactory(ARGS_CAUSE, getPrivilegedConstructor(throwableType), createMessageFactory(stringType))
+            (if (isSandboxed) sandbox.java.security.PrivilegedActionException::class.java
+                else PrivilegedActionException::class.java).isAssignableFrom(this) ->
+                DJVMThrowableFactory(ARGS_CAUSE, getPrivilegedConstructor(
+                    if (isSandboxed) Exception::class.java else kotlin.Exception::class.java
+                ), null)
+            else -> createMessageFactory(stringType)
+        }
+    }
+}
+
+private fun Class<*>.createMessageFactory(stringType: Class<*>): DJVMThrowableFactory {
+    val message = findPrivilegedConstructor(stringType)
+    return if (message != null) {
+        DJVMThrowableFactory(ARGS_MESSAGE, message, null)
+    } else {
+        DJVMThrowableFactory(ARGS_NONE, getPrivilegedConstructor(), null)
+    }
+}
+
+private const val ARGS_MESSAGE_CAUSE = 0
+private const val ARGS_CAUSE_MESSAGE = 1
+private const val ARGS_CAUSE = 2
+private const val ARGS_MESSAGE = 3
+private const val ARGS_NONE = 4
+
+/**
+ * Creates an exception using the constructor that [createThrowableFactory]
+ * chose for its class, so that copying an exception across the sandbox
+ * boundary does not search for a constructor every time.
+ */
+private class DJVMThrowableFactory(
+    private val parameters: kotlin.Int,
+    private val constructor: Constructor<*>,
+    private val withoutCause: DJVMThrowableFactory?
+) {
+    /**
+     * Whether [create] passes the cause to the constructor, so that
+     * the caller does not need to invoke `initCause` afterwards.
+     */
+    val setsCause: kotlin.Boolean
+        get() = parameters != ARGS_MESSAGE && parameters != ARGS_NONE
+
+    /**
+     * [java.lang.ExceptionInInitializerError] must have a non-null
+     * cause to use its cause constructor.
+     */
+    fun select(cause: Any?): DJVMThrowableFactory {
+        return if (cause == null && withoutCause != null) withoutCause else this
+    }
+
+    fun create(message: Any?, cause: Any?): Any {
+        return when (parameters) {
+            ARGS_MESSAGE_CAUSE -> constructor.newInstance(message, cause)
+            ARGS_CAUSE_MESSAGE -> constructor.newInstance(cause, message)
+            ARGS_CAUSE -> constructor.newInstance(cause)
+            ARGS_MESSAGE -> constructor.newInstance(message)
+            else -> constructor.newInstance()
+        }
+    }
+}
+
 private fun findEntryPointIndex(source: Array<java.lang.StackTraceElement>): Int {
     var idx = 0
     while (idx < source.size && !isEntryPoint(source[idx])) {
@@ -754,10 +996,6 @@ private fun findEntryPointIndex(source: Array<java.lang.StackTraceElement>): Int
     return idx
 }
 
-private fun sanitiseToDJVM(source: Array<java.lang.StackTraceElement>): Array<StackTraceElement> {
-    return copyToDJVM(source, 0, findEntryPointIndex(source))
-}
-
 internal fun copyToDJVM(source: Array<java.lang.StackTraceElement>, fromIdx: Int, toIdx: Int): Array<StackTraceElement> {
     return source.sliceArray(fromIdx until toIdx).map(::toDJVM).toTypedArray()
 }
@@ -975,6 +1213,14 @@ private fun <T> Class<T>.getPrivilegedConstructor(vararg args: Class<*>): Constr
     return doPrivileged(DJVMConstructorAction(this, args))
 }
 
+private fun <T> Class<T>.findPrivilegedConstructor(vararg args: Class<*>): Constructor<T>? {
+    return try {
+        getPrivilegedConstructor(*args)
+    } catch (_: NoSuchMethodException) {
+        null
+    }
+}
+
 private class DJVMEnumAction(
     private val clazz: Class<out Enum<*>>
 ) : PrivilegedExceptionAction<Array<out Enum<*>>?> {
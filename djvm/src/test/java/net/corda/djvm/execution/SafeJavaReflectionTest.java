@@ -300,6 +300,40 @@ class SafeJavaReflectionTest extends TestBase {
         }
     }
 
+    @Test
+    void testGetMethodTwice() {
+        sandbox(ctx -> {
+            try {
+                TypedTaskFactory taskFactory = ctx.getClassLoader().createTypedTaskFactory();
+                Boolean[] results = WithJava.run(taskFactory, GetMethodTwice.class, "hashCode");
+                assertThat(results).containsExactly(true, true, false);
+            } catch(Exception e) {
+                fail(e);
+            }
+        });
+    }
+
+    public static class GetMethodTwice implements Function<String, Boolean[]> {
+        @Override
+        public Boolean[] apply(String methodName) {
+            Method first;
+            Method second;
+            Method other;
+            try {
+                first = getClass().getMethod(methodName);
+                second = getClass().getMethod(methodName);
+                other = getClass().getMethod("toString");
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            return new Boolean[] {
+                first.equals(second),
+                first.toGenericString().equals(second.toGenericString()),
+                first.equals(other)
+            };
+        }
+    }
+
     @SuppressWarnings("WeakerAccess")
     public static class UserData {
         private final String data;
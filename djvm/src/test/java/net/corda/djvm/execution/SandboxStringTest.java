@@ -85,6 +85,23 @@ class SandboxStringTest extends TestBase {
         });
     }
 
+    @Test
+    void testStringConstantAfterReset() {
+        create(context -> {
+            for (int run = 0; run < 3; ++run) {
+                sandbox(context, ctx -> {
+                    try {
+                        TypedTaskFactory taskFactory = ctx.getClassLoader().createTypedTaskFactory();
+                        assertThat(WithJava.run(taskFactory, StringConstant.class, "Wibble!"))
+                                .isEqualTo("Wibble!");
+                    } catch (Exception e) {
+                        fail(e);
+                    }
+                });
+            }
+        });
+    }
+
     public static class StringConstant implements Function<String, String> {
         @SuppressWarnings("all")
         @Override
@@ -99,6 +116,33 @@ class SandboxStringTest extends TestBase {
         }
     }
 
+    @Test
+    void testRepeatedStringConstant() {
+        sandbox(ctx -> {
+            try {
+                TypedTaskFactory taskFactory = ctx.getClassLoader().createTypedTaskFactory();
+                assertThat(WithJava.run(taskFactory, RepeatedStringConstant.class, "Wibble!"))
+                        .isEqualTo("Wibble!");
+            } catch (Exception e) {
+                fail(e);
+            }
+        });
+    }
+
+    public static class RepeatedStringConstant implements Function<String, String> {
+        @SuppressWarnings("all")
+        @Override
+        public String apply(String input) {
+            String constant = input.intern();
+            for (int i = 0; i < 3; ++i) {
+                if (constant != "Wibble!") {
+                    throw new IllegalArgumentException("String constant has not been interned");
+                }
+            }
+            return constant;
+        }
+    }
+
     @Test
     void encodeStringWithUnknownCharset() {
         sandbox(ctx -> {
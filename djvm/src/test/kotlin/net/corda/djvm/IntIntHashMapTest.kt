@@ -0,0 +1,34 @@
+package net.corda.djvm
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class IntIntHashMapTest {
+    @Test
+    fun testValuesAreOnlyComputedOnce() {
+        val map = IntIntHashMap()
+        var counter = 0
+        val keys = listOf(0, 1, -1, Int.MIN_VALUE, Int.MAX_VALUE)
+        val values = keys.map { key -> map.computeIfAbsent(key) { ++counter } }
+        assertThat(values).containsExactly(1, 2, 3, 4, 5)
+        assertThat(keys.map { key -> map.computeIfAbsent(key) { ++counter } }).isEqualTo(values)
+        assertThat(map.size()).isEqualTo(keys.size)
+    }
+
+    @Test
+    fun testMapGrowsAndClears() {
+        val map = IntIntHashMap()
+        for (key in 0 until 100_000) {
+            map.computeIfAbsent(key * 31) { key }
+        }
+        assertThat(map.size()).isEqualTo(100_000)
+        for (key in 0 until 100_000) {
+            assertThat(map.computeIfAbsent(key * 31) { -1 }).isEqualTo(key)
+        }
+
+        map.clear()
+        assertThat(map.size()).isZero()
+        assertThat(map.computeIfAbsent(0) { 42 }).isEqualTo(42)
+        assertThat(map.computeIfAbsent(31) { 99 }).isEqualTo(99)
+    }
+}
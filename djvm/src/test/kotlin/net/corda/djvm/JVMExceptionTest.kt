@@ -60,6 +60,27 @@ class JVMExceptionTest : TestBase(KOTLIN) {
             .hasNoCause()
     }
 
+    @Test
+    fun testExceptionInInitializerErrorWithAndWithoutCause() = sandbox {
+        val taskFactory = classLoader.createTypedTaskFactory()
+        val throwMeTask = taskFactory.create(ThrowMeTask::class.java)
+        repeat(2) {
+            val withCause = assertThrows<ExceptionInInitializerError> {
+                throwMeTask.apply(ExceptionInInitializerError(MyCustomException(MESSAGE)))
+            }
+            assertThat(withCause)
+                .hasCauseExactlyInstanceOf(Exception::class.java)
+                .hasMessage(null)
+
+            val withMessage = assertThrows<ExceptionInInitializerError> {
+                throwMeTask.apply(ExceptionInInitializerError(OTHER))
+            }
+            assertThat(withMessage)
+                .hasMessage(OTHER)
+                .hasNoCause()
+        }
+    }
+
     @Test
     fun testNoSuchMethodException() = sandbox {
         val taskFactory = classLoader.createTypedTaskFactory()
@@ -15,6 +15,7 @@ import java.util.zip.Deflater.NO_COMPRESSION
 
 class SandboxConfigurationTest : TestBase(KOTLIN) {
     private lateinit var testJar: DummyJar
+    private lateinit var multiClassJar: DummyJar
 
     @BeforeAll
     fun setup(@TempDir testProjectDir: Path) {
@@ -29,6 +30,11 @@ class SandboxConfigurationTest : TestBase(KOTLIN) {
             jar.putDirectoryOf(PreloadExample::class.java)
             jar.putCompressedClass(PreloadExample::class.java)
         })
+        multiClassJar = DummyJar(testProjectDir, "sandbox-configuration-batches").build(JarWriter { jar, _ ->
+            jar.putUncompressedEntry("META-INF/DJVM-preload", byteArrayOf())
+            jar.putDirectoryOf(PreloadExample::class.java)
+            PRELOAD_CLASSES.forEach { jar.putCompressedClass(it) }
+        })
     }
 
     @Test
@@ -80,6 +86,57 @@ class SandboxConfigurationTest : TestBase(KOTLIN) {
         }
     }
 
+    @Test
+    fun testParallelPreloadingConfiguration() {
+        val sequential = preloadWith(1, multiClassJar)
+        val parallel = preloadWith(4, multiClassJar)
+
+        // Four threads divide these classes into three batches of two.
+        assertThat(PRELOAD_CLASSES).hasSize(6)
+        assertThat(parallel.summaries).hasSize(1)
+        with(parallel.summaries[0]) {
+            assertThat(location).isEqualTo(multiClassJar.path.toUri().toURL())
+            assertThat(classCount).isEqualTo(PRELOAD_CLASSES.size)
+            assertThat(referenceCount).isEqualTo(sequential.summaries[0].referenceCount)
+            assertThat(elapsedNanos).isPositive()
+        }
+
+        assertThat(parallel.classNames)
+            .containsAll(PRELOAD_CLASSES.map { "sandbox." + it.name })
+            .isEqualTo(sequential.classNames)
+        assertThat(parallel.parentClassNames)
+            .contains("sandbox.java.lang.Object", "sandbox.java.util.function.Function")
+            .isEqualTo(sequential.parentClassNames)
+    }
+
+    private class Preloaded(
+        val summaries: List<PreloadSummary>,
+        val classNames: Set<String>,
+        val parentClassNames: Set<String>
+    )
+
+    private fun preloadWith(parallelism: Int, jar: DummyJar): Preloaded {
+        lateinit var preloaded: Preloaded
+        flushInternalCache()
+        try {
+            sandbox {
+                UserPathSource(arrayOf(jar.path.toUri().toURL())).use { source ->
+                    val childConfiguration = configuration.createChild(source)
+                    val summaries = childConfiguration.preload(parallelism)
+                    assertThat(childConfiguration.byteCodeCache.classNames).isEmpty()
+                    preloaded = Preloaded(
+                        summaries = summaries,
+                        classNames = configuration.byteCodeCache.classNames.toSet(),
+                        parentClassNames = configuration.byteCodeCache.parent.classNames.toSet()
+                    )
+                }
+            }
+        } finally {
+            flushInternalCache()
+        }
+        return preloaded
+    }
+
     object PreloadExample : Function<String, String> {
         @JvmField
         var message: String = "Hello Sandbox!"
@@ -88,5 +145,35 @@ class SandboxConfigurationTest : TestBase(KOTLIN) {
             throw IllegalArgumentException("Example says: '$input'")
         }
     }
-}
 
+    class PreloadString : Function<String, String> {
+        override fun apply(input: String): String = StringBuilder(input).reverse().toString()
+    }
+
+    class PreloadList : Function<String, List<String>> {
+        override fun apply(input: String): List<String> = ArrayList<String>().apply { add(input) }
+    }
+
+    class PreloadMap : Function<String, Map<String, Int>> {
+        override fun apply(input: String): Map<String, Int> = HashMap<String, Int>().apply { put(input, input.length) }
+    }
+
+    class PreloadNumber : Function<String, Long> {
+        override fun apply(input: String): Long = input.toLong()
+    }
+
+    class PreloadException : Function<String, String> {
+        override fun apply(input: String): String = throw UnsupportedOperationException(input)
+    }
+
+    private companion object {
+        private val PRELOAD_CLASSES: List<Class<*>> = listOf(
+            PreloadExample::class.java,
+            PreloadString::class.java,
+            PreloadList::class.java,
+            PreloadMap::class.java,
+            PreloadNumber::class.java,
+            PreloadException::class.java
+        )
+    }
+}
@@ -0,0 +1,31 @@
+package net.corda.djvm
+
+import net.corda.djvm.SandboxType.KOTLIN
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.catchThrowable
+import org.junit.jupiter.api.Test
+import java.util.function.Consumer
+
+class SandboxThreadTest : TestBase(KOTLIN) {
+    @Test
+    fun `context is bound to sandbox thread`() = create(Consumer { context ->
+        var boundContext: SandboxRuntimeContext? = null
+        var sandboxThread: SandboxThread? = null
+        var unboundException: Throwable? = null
+        SandboxThread(Runnable {
+            context.use(Consumer {
+                sandboxThread = Thread.currentThread() as SandboxThread
+                boundContext = SandboxRuntimeContext.instance
+            })
+            unboundException = catchThrowable { SandboxRuntimeContext.instance }
+        }, "DJVM-sandbox-thread").apply {
+            start()
+            join()
+        }
+        assertThat(boundContext).isSameAs(context)
+        assertThat(sandboxThread?.context).isNull()
+        assertThat(unboundException)
+            .isExactlyInstanceOf(IllegalStateException::class.java)
+            .hasMessage("SandboxRuntimeContext has not been initialized before use")
+    })
+}
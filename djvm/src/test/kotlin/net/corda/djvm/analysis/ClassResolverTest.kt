@@ -46,6 +46,28 @@ class ClassResolverTest {
         assertThat(resolver.resolveDescriptor("Lcom/somewhere/Hello;")).isEqualTo("Lsandbox/com/somewhere/Hello;")
         assertThat(resolver.resolveDescriptor("JLFoo;LBar;I")).isEqualTo("JLsandbox/Foo;Lsandbox/Bar;I")
         assertThat(resolver.resolveDescriptor("(LFoo;)LBar;")).isEqualTo("(Lsandbox/Foo;)Lsandbox/Bar;")
+        assertThat(resolver.resolveDescriptor("([LFoo;[[I)[LBar;")).isEqualTo("([Lsandbox/Foo;[[I)[Lsandbox/Bar;")
+    }
+
+    @Test
+    fun `can leave primitive arrays unchanged`() {
+        assertThat(resolver.resolve("[I")).isEqualTo("[I")
+        assertThat(resolver.resolve("[[J")).isEqualTo("[[J")
+    }
+
+    @Test
+    fun `resolved names are remembered`() {
+        val hits = resolver.cacheHits
+        val misses = resolver.cacheMisses
+        assertThat(resolver.resolve("foo/bar/Cached")).isEqualTo("sandbox/foo/bar/Cached")
+        assertThat(resolver.cacheMisses).isEqualTo(misses + 1)
+
+        assertThat(resolver.resolve("foo/bar/Cached")).isEqualTo("sandbox/foo/bar/Cached")
+        assertThat(resolver.cacheHits).isEqualTo(hits + 1)
+        assertThat(resolver.cacheMisses).isEqualTo(misses + 1)
+
+        assertThat(resolver.reverse("sandbox/foo/bar/Cached")).isEqualTo("foo/bar/Cached")
+        assertThat(resolver.reverse("sandbox/foo/bar/Cached")).isEqualTo("foo/bar/Cached")
     }
 
 }
@@ -81,4 +81,25 @@ class WhitelistTest : TestBase(KOTLIN) {
         assertThat(whitelist.matches("java/security/AccessController.doPrivilegedWithCombiner:(Ljava/security/PrivilegedExceptionAction;)Ljava/lang/Object;")).isTrue()
         assertThat(whitelist.matches("java/security/AccessController.doPrivileged:(Ljava/security/PrivilegedAction;Ljava/security/AccessContext;)Ljava/lang/Object;")).isFalse()
     }
+
+    @Test
+    fun `test patterns without a simple literal prefix`() {
+        val whitelist = Whitelist.createWhitelist() + setOf(
+            "^com/examples?/Optional\$".toRegex(),
+            "^net/foo/.*|^net/bar/.*\$".toRegex(),
+            "^ORG/IGNORED/.*\$".toRegex(RegexOption.IGNORE_CASE),
+            "^.*/Anywhere\$".toRegex()
+        )
+        assertThat(whitelist.matches("com/example/Optional")).isTrue()
+        assertThat(whitelist.matches("com/examples/Optional")).isTrue()
+        assertThat(whitelist.matches("net/foo/Baz")).isTrue()
+        assertThat(whitelist.matches("net/bar/Baz")).isTrue()
+        assertThat(whitelist.matches("org/ignored/Thing")).isTrue()
+        assertThat(whitelist.matches("some/where/Anywhere")).isTrue()
+        assertThat(whitelist.matches("net/baz/Foo")).isFalse()
+
+        // Repeated lookups are remembered, but must not change the results.
+        assertThat(whitelist.matches("net/baz/Foo")).isFalse()
+        assertThat(whitelist.matches("net/foo/Baz")).isTrue()
+    }
 }
@@ -0,0 +1,170 @@
+package net.corda.djvm.code
+
+import net.corda.djvm.code.impl.CostBatcher
+import net.corda.djvm.code.impl.RUNTIME_ACCOUNTER_NAME
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.Label
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes.ACC_PUBLIC
+import org.objectweb.asm.Opcodes.ACC_STATIC
+import org.objectweb.asm.Opcodes.GOTO
+import org.objectweb.asm.Opcodes.ICONST_0
+import org.objectweb.asm.Opcodes.ICONST_1
+import org.objectweb.asm.Opcodes.ICONST_2
+import org.objectweb.asm.Opcodes.IDIV
+import org.objectweb.asm.Opcodes.IFEQ
+import org.objectweb.asm.Opcodes.INVOKESTATIC
+import org.objectweb.asm.Opcodes.POP
+import org.objectweb.asm.Opcodes.RETURN
+import org.objectweb.asm.Opcodes.V1_8
+import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.tree.MethodInsnNode
+
+class CostBatcherTest {
+
+    @Test
+    fun `combines consecutive costs`() {
+        val method = generate { mv ->
+            val target = Label()
+            mv.record("recordInvocation")
+            mv.visitInsn(ICONST_1)
+            mv.visitInsn(POP)
+            mv.record("recordInvocation")
+            mv.record("recordJump")
+            mv.visitJumpInsn(GOTO, target)
+            mv.visitLabel(target)
+            mv.record("recordInvocation")
+            mv.invoke("baz")
+            mv.visitInsn(RETURN)
+        }
+
+        assertThat(method.opcodes()).containsExactly(
+            ICONST_1, ICONST_2, ICONST_0, INVOKESTATIC,
+            ICONST_1,
+            POP,
+            GOTO,
+            -1,
+            INVOKESTATIC,
+            INVOKESTATIC,
+            RETURN
+        )
+        assertThat(method.accountingCalls()).containsExactly("recordCosts", "recordInvocation")
+    }
+
+    @Test
+    fun `combines costs across an invocation outside any try block`() {
+        val method = generate { mv ->
+            mv.record("recordInvocation")
+            mv.invoke("foo")
+            mv.record("recordInvocation")
+            mv.invoke("bar")
+            mv.visitInsn(RETURN)
+        }
+        assertThat(method.accountingCalls()).containsExactly("recordCosts")
+    }
+
+    @Test
+    fun `does not combine costs across an invocation inside a try block`() {
+        val method = generate { mv ->
+            mv.guarded {
+                mv.record("recordInvocation")
+                mv.invoke("foo")
+                mv.record("recordInvocation")
+                mv.invoke("bar")
+            }
+        }
+        assertThat(method.accountingCalls()).containsExactly("recordInvocation", "recordInvocation")
+    }
+
+    @Test
+    fun `does not combine costs across an instruction that can throw inside a try block`() {
+        val method = generate { mv ->
+            mv.guarded {
+                mv.record("recordInvocation")
+                mv.visitInsn(ICONST_1)
+                mv.visitInsn(ICONST_0)
+                mv.visitInsn(IDIV)
+                mv.visitInsn(POP)
+                mv.record("recordInvocation")
+            }
+        }
+        assertThat(method.accountingCalls()).containsExactly("recordInvocation", "recordInvocation")
+    }
+
+    @Test
+    fun `does not combine costs across the end of a block`() {
+        val method = generate { mv ->
+            val target = Label()
+            mv.visitInsn(ICONST_0)
+            mv.record("recordJump")
+            mv.visitJumpInsn(IFEQ, target)
+            mv.record("recordInvocation")
+            mv.invoke("foo")
+            mv.visitLabel(target)
+            mv.visitInsn(RETURN)
+        }
+        assertThat(method.accountingCalls()).containsExactly("recordJump", "recordInvocation")
+    }
+
+    @Test
+    fun `leaves single costs alone`() {
+        val method = generate { mv ->
+            mv.record("recordInvocation")
+            mv.invoke("foo")
+            mv.visitInsn(RETURN)
+        }
+        assertThat(method.accountingCalls()).containsExactly("recordInvocation")
+    }
+
+    private fun generate(body: (MethodVisitor) -> Unit): ClassNode {
+        val node = ClassNode()
+        val batcher: ClassVisitor = CostBatcher(node)
+        batcher.visit(V1_8, ACC_PUBLIC, "Example", null, "java/lang/Object", null)
+        batcher.visitMethod(ACC_PUBLIC or ACC_STATIC, "run", "()V", null, null)!!.apply {
+            visitCode()
+            body(this)
+            visitMaxs(-1, -1)
+            visitEnd()
+        }
+        batcher.visitEnd()
+        return node
+    }
+
+    /**
+     * Wraps the [body] inside a try-catch block whose handler just returns.
+     */
+    private fun MethodVisitor.guarded(body: () -> Unit) {
+        val start = Label()
+        val end = Label()
+        val handler = Label()
+        visitTryCatchBlock(start, end, handler, "java/lang/Exception")
+        visitLabel(start)
+        body()
+        visitLabel(end)
+        visitInsn(RETURN)
+        visitLabel(handler)
+        visitInsn(POP)
+        visitInsn(RETURN)
+    }
+
+    private fun MethodVisitor.record(name: String) {
+        visitMethodInsn(INVOKESTATIC, RUNTIME_ACCOUNTER_NAME, name, "()V", false)
+    }
+
+    private fun MethodVisitor.invoke(name: String) {
+        visitMethodInsn(INVOKESTATIC, "Other", name, "()V", false)
+    }
+
+    private fun ClassNode.opcodes(): List<Int> {
+        return methods.single().instructions.toArray().map { it.opcode }
+    }
+
+    private fun ClassNode.accountingCalls(): List<String> {
+        return methods.single().instructions.toArray()
+            .filterIsInstance<MethodInsnNode>()
+            .filter { it.owner == RUNTIME_ACCOUNTER_NAME }
+            .map { it.name }
+    }
+}
@@ -0,0 +1,39 @@
+package net.corda.djvm.code
+
+import net.corda.djvm.SandboxType.KOTLIN
+import net.corda.djvm.TestBase
+import net.corda.djvm.code.impl.SandboxClassWriter
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassWriter.COMPUTE_FRAMES
+
+class SandboxClassWriterTest : TestBase(KOTLIN) {
+    private fun createWriter(): SandboxClassWriter {
+        val reader = ClassReader(Any::class.java.name)
+        return SandboxClassWriter(reader, configuration.supportingClassLoader, configuration, COMPUTE_FRAMES)
+    }
+
+    @Test
+    fun `common superclasses are shared between writers`() {
+        val cached = configuration.commonSuperClasses.size
+        val firstWriter = createWriter()
+        assertThat(firstWriter.getCommonSuperClass("sandbox/java/lang/Integer", "sandbox/java/lang/Long"))
+            .isEqualTo("sandbox/java/lang/Number")
+        assertThat(firstWriter.getCommonSuperClass("sandbox/java/lang/Long", "sandbox/java/lang/Integer"))
+            .isEqualTo("sandbox/java/lang/Number")
+        assertThat(configuration.commonSuperClasses.size).isEqualTo(cached + 2)
+
+        val secondWriter = createWriter()
+        assertThat(secondWriter.getCommonSuperClass("sandbox/java/lang/Integer", "sandbox/java/lang/Long"))
+            .isEqualTo("sandbox/java/lang/Number")
+        assertThat(configuration.commonSuperClasses.size).isEqualTo(cached + 2)
+    }
+
+    @Test
+    fun `common superclass of an interface is object`() {
+        val writer = createWriter()
+        assertThat(writer.getCommonSuperClass("sandbox/java/lang/Comparable", "sandbox/java/lang/Runnable"))
+            .isEqualTo("java/lang/Object")
+    }
+}
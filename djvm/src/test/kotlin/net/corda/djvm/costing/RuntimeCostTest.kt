@@ -26,4 +26,40 @@ class RuntimeCostTest {
         }.join()
     }
 
+    @Test
+    fun `costs are isolated for each thread`() {
+        val cost = RuntimeCost(10, Function { "failed" })
+        cost.increment(5)
+        thread(name = "Bar") {
+            assertThat(cost.value).isEqualTo(0)
+            cost.increment(7)
+            assertThat(cost.value).isEqualTo(7)
+        }.join()
+        assertThat(cost.value).isEqualTo(5)
+        cost.increment(2)
+        assertThat(cost.value).isEqualTo(7)
+    }
+
+    @Test
+    fun `uncosted operations are not counted`() {
+        val cost = RuntimeCost(10, Function { "failed" })
+        cost.increment()
+        RuntimeCost.uncosted(Runnable {
+            cost.increment(100)
+        })
+        assertThat(cost.value).isEqualTo(1)
+        assertThatExceptionOfType(ThresholdViolationError::class.java)
+            .isThrownBy { cost.increment(100) }
+            .withMessage("failed")
+    }
+
+    @Test
+    fun `can reset cost for current thread`() {
+        val cost = RuntimeCost(10, Function { "failed" })
+        cost.increment(8)
+        cost.reset()
+        assertThat(cost.value).isEqualTo(0)
+        cost.increment(8)
+        assertThat(cost.value).isEqualTo(8)
+    }
 }
@@ -0,0 +1,118 @@
+package net.corda.djvm.execution
+
+import net.corda.djvm.SandboxType.KOTLIN
+import net.corda.djvm.TestBase
+import net.corda.djvm.analysis.impl.ClassAndMemberVisitor.Companion.API_VERSION
+import net.corda.djvm.code.impl.RUNTIME_ACCOUNTER_NAME
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassReader.SKIP_DEBUG
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import java.util.function.Consumer
+import java.util.function.Function
+
+class BatchedCostAccountingTest : TestBase(KOTLIN) {
+    private fun costsOf(batched: Boolean, taskClass: Class<out Function<Int, Int>>, input: Int): List<Long> {
+        lateinit var costs: List<Long>
+        create(
+            options = Consumer { options ->
+                options.setBatchCostAccounting(batched)
+            },
+            action = Consumer { ctx ->
+                sandbox(ctx, Consumer {
+                    val taskFactory = ctx.classLoader.createTypedTaskFactory()
+                    assertThat(taskFactory.create(taskClass).apply(input)).isEqualTo(input)
+                    costs = with(ctx.runtimeCosts) {
+                        listOf(allocationCost.value, jumpCost.value, invocationCost.value, throwCost.value)
+                    }
+                })
+            }
+        )
+        return costs
+    }
+
+    private fun accountingCallsOf(batched: Boolean, taskClass: Class<*>): List<String> {
+        val calls = mutableListOf<String>()
+        create(
+            options = Consumer { options ->
+                options.setBatchCostAccounting(batched)
+            },
+            action = Consumer { ctx ->
+                sandbox(ctx, Consumer {
+                    val byteCode = ctx.classLoader.loadForSandbox(taskClass.name).byteCode.bytes
+                    ClassReader(byteCode).accept(object : ClassVisitor(API_VERSION) {
+                        override fun visitMethod(
+                            access: Int, name: String, descriptor: String, signature: String?, exceptions: Array<out String>?
+                        ): MethodVisitor = object : MethodVisitor(API_VERSION) {
+                            override fun visitMethodInsn(
+                                opcode: Int, owner: String, name: String, descriptor: String, isInterface: Boolean
+                            ) {
+                                if (owner == RUNTIME_ACCOUNTER_NAME) {
+                                    calls.add(name)
+                                }
+                            }
+                        }
+                    }, SKIP_DEBUG)
+                })
+            }
+        )
+        return calls
+    }
+
+    @Test
+    fun `batching combines each loop iteration's costs`() {
+        assertThat(accountingCallsOf(false, Loop::class.java))
+            .contains("recordJump", "recordInvocation")
+            .doesNotContain("recordCosts")
+        assertThat(accountingCallsOf(true, Loop::class.java))
+            .contains("recordCosts")
+    }
+
+    @Test
+    fun `batched costs match unbatched costs`() {
+        val unbatched = costsOf(false, Loop::class.java, 100)
+        val batched = costsOf(true, Loop::class.java, 100)
+        assertThat(unbatched[1]).isGreaterThanOrEqualTo(100)
+        assertThat(batched).isEqualTo(unbatched)
+    }
+
+    @Test
+    fun `batched costs match unbatched costs after catching exceptions`() {
+        val unbatched = costsOf(false, ThrowAndCatch::class.java, 10)
+        val batched = costsOf(true, ThrowAndCatch::class.java, 10)
+        assertThat(unbatched[3]).isGreaterThanOrEqualTo(10)
+        assertThat(batched).isEqualTo(unbatched)
+    }
+
+    class Loop : Function<Int, Int> {
+        override fun apply(count: Int): Int {
+            var total = 0
+            for (i in 0 until count) {
+                total += next(i) - i
+            }
+            return total
+        }
+
+        private fun next(i: Int): Int = i + 1
+    }
+
+    class ThrowAndCatch : Function<Int, Int> {
+        override fun apply(count: Int): Int {
+            var caught = 0
+            for (i in 0 until count) {
+                try {
+                    // We must not be charged for invoking next() when fail() throws.
+                    caught += fail(i) + next(i)
+                } catch (e: IllegalStateException) {
+                    ++caught
+                }
+            }
+            return caught
+        }
+
+        private fun fail(i: Int): Int = if (i >= 0) throw IllegalStateException("Failed") else i
+        private fun next(i: Int): Int = i + 1
+    }
+}
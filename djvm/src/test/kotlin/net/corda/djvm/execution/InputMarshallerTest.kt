@@ -0,0 +1,100 @@
+package net.corda.djvm.execution
+
+import net.corda.djvm.SandboxRuntimeContext
+import net.corda.djvm.SandboxType.KOTLIN
+import net.corda.djvm.TestBase
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder.LITTLE_ENDIAN
+import java.util.function.Consumer
+import java.util.function.Function
+
+class InputMarshallerTest : TestBase(KOTLIN) {
+    @Test
+    fun `configured marshaller converts input into sandbox`() = create(
+        options = Consumer { options ->
+            options.setInputMarshaller(Point::class.java, Function { point ->
+                SandboxRuntimeContext.instance.classLoader.createBasicInput().apply("${point.x},${point.y}")
+            })
+        },
+        action = Consumer { ctx ->
+            sandbox(ctx, Consumer {
+                val taskFactory = ctx.classLoader.createTypedTaskFactory()
+                val describe = taskFactory.create(DescribeInput::class.java)
+                assertThat(describe.apply(Point(3, 4))).isEqualTo("3,4")
+                assertThat(describe.apply(12L)).isEqualTo("12")
+            })
+        }
+    )
+
+    @Test
+    fun `primitive arrays enter sandbox without copying`() = sandbox {
+        val taskFactory = classLoader.createTypedTaskFactory()
+        val identity = taskFactory.create(IdentityBytes::class.java)
+        val bytes = byteArrayOf(1, 2, 3)
+        assertThat(identity.apply(bytes)).isSameAs(bytes)
+    }
+
+    @Test
+    fun `heap byte buffer enters sandbox as read-only view`() = sandbox {
+        val taskFactory = classLoader.createTypedTaskFactory()
+        val readBuffer = taskFactory.create(ReadByteBuffer::class.java)
+        val buffer = ByteBuffer.allocate(16).order(LITTLE_ENDIAN).putLong(8, 0x0102)
+        buffer.position(8)
+        assertThat(readBuffer.apply(buffer)).isEqualTo("true:LITTLE_ENDIAN:8:258")
+        assertThat(buffer.position()).isEqualTo(8)
+    }
+
+    @Test
+    fun `direct byte buffer enters sandbox as read-only copy`() = sandbox {
+        val taskFactory = classLoader.createTypedTaskFactory()
+        val readBuffer = taskFactory.create(ReadByteBuffer::class.java)
+        val buffer = ByteBuffer.allocateDirect(8).putLong(0, 0x0102)
+        assertThat(readBuffer.apply(buffer)).isEqualTo("true:BIG_ENDIAN:8:258")
+    }
+
+    @Test
+    fun `copying object array is charged as an allocation`() {
+        val costs = LongArray(2)
+        sandbox {
+            val countElements = classLoader.createTypedTaskFactory().create(CountElements::class.java)
+            assertThat(countElements.apply(arrayOfNulls(0))).isEqualTo(0)
+            costs[0] = runtimeCosts.allocationCost.value
+        }
+        sandbox {
+            val countElements = classLoader.createTypedTaskFactory().create(CountElements::class.java)
+            assertThat(countElements.apply(arrayOfNulls(1000))).isEqualTo(1000)
+            costs[1] = runtimeCosts.allocationCost.value
+        }
+
+        // Each element of a sandbox.java.lang.String[] costs 16 bytes.
+        assertThat(costs[1] - costs[0]).isEqualTo(1000L * 16)
+    }
+
+    class Point(val x: Int, val y: Int)
+
+    class IdentityBytes : Function<ByteArray, ByteArray> {
+        override fun apply(input: ByteArray): ByteArray {
+            return input
+        }
+    }
+
+    class ReadByteBuffer : Function<ByteBuffer, String> {
+        override fun apply(input: ByteBuffer): String {
+            return "${input.isReadOnly}:${input.order()}:${input.remaining()}:${input.getLong(0)}"
+        }
+    }
+
+    class CountElements : Function<Array<String?>, Int> {
+        override fun apply(input: Array<String?>): Int {
+            return input.size
+        }
+    }
+
+    class DescribeInput : Function<Any, String> {
+        override fun apply(input: Any): String {
+            return input.toString()
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package net.corda.djvm.execution
+
+import net.corda.djvm.SandboxType.KOTLIN
+import net.corda.djvm.TestBase
+import net.corda.djvm.analysis.impl.ClassAndMemberVisitor.Companion.API_VERSION
+import net.corda.djvm.code.impl.DJVM_NAME
+import net.corda.djvm.code.impl.REGISTER_RESET_NAME
+import net.corda.djvm.code.impl.REGISTER_SNAPSHOT_RESET_NAME
+import net.corda.djvm.rewiring.SandboxClassLoader
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassReader.SKIP_DEBUG
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import java.util.function.Consumer
+import java.util.function.Function
+
+/**
+ * This file's facade class only assigns constants to its
+ * static fields, and so the sandbox resets it by restoring
+ * these fields from a snapshot.
+ */
+private var snapshotCounter: Long = 10
+private var snapshotFlag: Boolean = true
+
+class ResetStaticSnapshotTest : TestBase(KOTLIN) {
+    @Test
+    fun testResetFromSnapshot() = create {
+        // The first reset replays the reset method and takes
+        // the snapshot, and the second reset restores it.
+        for (run in 1..3) {
+            sandbox(this, Consumer {
+                val taskFactory = classLoader.createTypedTaskFactory()
+                val updateCounter = taskFactory.create(UpdateCounter::class.java)
+                assertThat(updateCounter.apply(run * 100L)).isEqualTo(10L)
+                assertThat(updateCounter.apply(0L)).isEqualTo(run * 100L)
+            })
+        }
+    }
+
+    @Test
+    fun testStringsRemainIdenticalToLiteralsAfterReset() = create {
+        for (run in 1..3) {
+            sandbox(this, Consumer {
+                val taskFactory = classLoader.createTypedTaskFactory()
+                assertThat(taskFactory.create(IsLiteralName::class.java).apply("Snapshot")).isTrue()
+
+                val updateName = taskFactory.create(UpdateName::class.java)
+                assertThat(updateName.apply("Run $run")).isEqualTo("Snapshot")
+                assertThat(updateName.apply("")).isEqualTo("Run $run")
+            })
+        }
+    }
+
+    @Test
+    fun testRegistersForSnapshotReset() = sandbox {
+        assertThat(resetRegistrationsOf(classLoader, SNAPSHOT_FACADE))
+            .containsExactly(REGISTER_SNAPSHOT_RESET_NAME)
+        assertThat(resetRegistrationsOf(classLoader, STRINGS_FACADE))
+            .containsExactly(REGISTER_SNAPSHOT_RESET_NAME)
+        assertThat(resetRegistrationsOf(classLoader, SnapshotConstants::class.java.name))
+            .containsExactly(REGISTER_RESET_NAME)
+    }
+
+    private fun resetRegistrationsOf(classLoader: SandboxClassLoader, className: String): List<String> {
+        val registrations = mutableListOf<String>()
+        val byteCode = classLoader.loadForSandbox(className).byteCode.bytes
+        ClassReader(byteCode).accept(object : ClassVisitor(API_VERSION) {
+            override fun visitMethod(
+                access: Int, name: String, descriptor: String, signature: String?, exceptions: Array<out String>?
+            ): MethodVisitor = object : MethodVisitor(API_VERSION) {
+                override fun visitMethodInsn(
+                    opcode: Int, owner: String, name: String, descriptor: String, isInterface: Boolean
+                ) {
+                    if (owner == DJVM_NAME && (name == REGISTER_RESET_NAME || name == REGISTER_SNAPSHOT_RESET_NAME)) {
+                        registrations.add(name)
+                    }
+                }
+            }
+        }, SKIP_DEBUG)
+        return registrations
+    }
+
+    class UpdateCounter : Function<Long, Long> {
+        override fun apply(input: Long): Long {
+            val result = if (snapshotFlag) snapshotCounter else -1
+            snapshotCounter = input
+            return result
+        }
+    }
+
+    class IsLiteralName : Function<String, Boolean> {
+        override fun apply(input: String): Boolean {
+            return snapshotName === "Snapshot" && SnapshotConstants.NAME === "Snapshot" && input.intern() === "Snapshot"
+        }
+    }
+
+    class UpdateName : Function<String, String> {
+        override fun apply(input: String): String {
+            val result = snapshotName
+            snapshotName = input
+            return result
+        }
+    }
+
+    private companion object {
+        const val SNAPSHOT_FACADE = "net.corda.djvm.execution.ResetStaticSnapshotTestKt"
+        const val STRINGS_FACADE = "net.corda.djvm.execution.SnapshotStringsKt"
+    }
+}
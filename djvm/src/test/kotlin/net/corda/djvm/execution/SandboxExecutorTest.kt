@@ -7,8 +7,14 @@ import net.corda.djvm.SandboxType.KOTLIN
 import net.corda.djvm.TestBase
 import net.corda.djvm.Utilities.throwRuleViolationError
 import net.corda.djvm.Utilities.throwThresholdViolationError
+import net.corda.djvm.analysis.AnalysisContext
+import net.corda.djvm.analysis.SourceLocation
 import net.corda.djvm.costing.ThresholdViolationError
+import net.corda.djvm.messages.Message
+import net.corda.djvm.references.EntityReference
+import net.corda.djvm.rewiring.SandboxClassLoadingException
 import net.corda.djvm.rules.RuleViolationError
+import net.corda.djvm.source.ClassSource
 import org.assertj.core.api.Assertions.assertThat
 import org.assertj.core.api.Assertions.assertThatExceptionOfType
 import org.junit.jupiter.api.Test
@@ -17,6 +23,9 @@ import org.junit.jupiter.params.ParameterizedTest
 import org.junit.jupiter.params.provider.ValueSource
 import java.nio.file.Files
 import java.nio.file.Paths
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.RejectedExecutionException
 import java.util.function.Function
 import java.util.stream.Collectors.joining
 
@@ -341,6 +350,175 @@ class SandboxExecutorTest : TestBase(KOTLIN) {
         var value = 0
     }
 
+    @Test
+    fun `can run isolated tasks on pooled threads`() = sandbox {
+        val workers = IsolatedTask.createWorkerPool(1)
+        try {
+            val first = IsolatedTask("pooled", configuration).submit(workers, Function { Thread.currentThread().name })
+            val second = IsolatedTask("pooled", configuration).submit(workers, Function { Thread.currentThread().name })
+            assertThat(first.get().exception).isNull()
+            assertThat(second.get().exception).isNull()
+            assertThat(first.get().output).isEqualTo(first.get().identifier).startsWith("DJVM-pooled-")
+            assertThat(second.get().output).isEqualTo(second.get().identifier).isNotEqualTo(first.get().output)
+        } finally {
+            workers.shutdown()
+        }
+    }
+
+    @Test
+    fun `can run a batch of isolated inputs`() = sandbox {
+        val executor = SandboxExecutor<Int, Int>(configuration, validating = true)
+        val results = executor.runBatch<Int, Int, TestBatchTask>(listOf(1, 2, 0, 4))
+        assertThat(results.map { it.output }).containsExactly(1, 2, null, 4)
+        assertThat(results.mapNotNull { it.exception }).hasSize(1)
+        assertThat(results[2].exception)
+            .isInstanceOf(SandboxException::class.java)
+            .hasMessageContaining("Input cannot be zero")
+        assertThat(results.map { it.costs.invocations }).allMatch { it > 0 }
+    }
+
+    class TestBatchTask : Function<Int, Int> {
+        override fun apply(input: Int): Int {
+            require(input != 0) { "Input cannot be zero" }
+            ReferencedClass.value += input
+            return ReferencedClass.value
+        }
+    }
+
+    @Test
+    fun `can run tasks asynchronously`() = sandbox {
+        val workers = IsolatedTask.createWorkerPool(1, 1)
+        try {
+            val executor = SandboxExecutor<Int, Int>(configuration, validating = false, parallelism = 1, workers = workers)
+            val result = executor.runAsync<Int, Int, TestStatePersistence>(0).toCompletableFuture().get()
+            assertThat(result.result).isEqualTo(1)
+        } finally {
+            workers.shutdown()
+        }
+    }
+
+    @Test
+    fun `asynchronous task exceptions are wrapped`() = sandbox {
+        val workers = IsolatedTask.createWorkerPool(1, 1)
+        try {
+            val executor = SandboxExecutor<Int, Int>(configuration, validating = false, parallelism = 1, workers = workers)
+            val stage = executor.runAsync<Int, Int, TestAsyncFailure>(0)
+            assertThatExceptionOfType(ExecutionException::class.java)
+                .isThrownBy { stage.toCompletableFuture().get() }
+                .withCauseExactlyInstanceOf(SandboxException::class.java)
+                .withMessageContaining("Asynchronous failure")
+        } finally {
+            workers.shutdown()
+        }
+    }
+
+    class TestAsyncFailure : Function<Int, Int> {
+        override fun apply(input: Int): Int {
+            throw IllegalStateException("Asynchronous failure")
+        }
+    }
+
+    @Test
+    fun `rejects asynchronous tasks when the queue is full`() = sandbox {
+        val workers = IsolatedTask.createWorkerPool(1, 1)
+        val latch = CountDownLatch(1)
+        try {
+            workers.execute { latch.await() }
+            workers.execute {}
+            val executor = SandboxExecutor<Int, Int>(configuration, validating = false, parallelism = 1, workers = workers)
+            val stage = executor.runAsync<Int, Int, TestStatePersistence>(0)
+            assertThatExceptionOfType(ExecutionException::class.java)
+                .isThrownBy { stage.toCompletableFuture().get() }
+                .withCauseExactlyInstanceOf(RejectedExecutionException::class.java)
+        } finally {
+            latch.countDown()
+            workers.shutdown()
+        }
+    }
+
+    @Test
+    fun `can validate classes in parallel`() = sandbox {
+        val executor = SandboxExecutor<Int, Int>(configuration, validating = true, parallelism = 4)
+        val summary = executor.validate(ClassSource.fromClassName(TestStatePersistence::class.java.name))
+        assertThat(summary.messages.errorCount).isZero()
+        assertThat(summary.classes.names)
+            .contains(nameOf<TestStatePersistence>(), nameOf<ReferencedClass>())
+        assertThat(summary.classes.map { it.name })
+            .isSorted()
+    }
+
+    private class ValidationOutcome(
+        val classNames: List<String>,
+        val messages: List<String>,
+        val references: Map<EntityReference, Set<SourceLocation>>,
+        val classOrigins: Map<String, List<EntityReference>>
+    )
+
+    private fun validateWith(parallelism: Int): ValidationOutcome {
+        flushInternalCache()
+        lateinit var outcome: ValidationOutcome
+        sandbox {
+            val context = if (parallelism > 1) {
+                AnalysisContext.concurrentFromConfiguration(configuration.analysisConfiguration)
+            } else {
+                AnalysisContext.fromConfiguration(configuration.analysisConfiguration)
+            }
+            val executor = SandboxExecutor<Int, Int>(configuration, validating = true, parallelism = parallelism)
+            assertThrows<SandboxClassLoadingException> {
+                executor.validate(context, ClassSource.fromClassName(ValidateAll::class.java.name))
+            }
+            outcome = ValidationOutcome(
+                classNames = context.classes.names.toList(),
+                messages = context.messages.sorted().map(Message::toString),
+                references = context.references.associate { it to context.references.locationsFromReference(it) },
+                classOrigins = context.classOrigins.mapValues { it.value.toList() }
+            )
+        }
+        return outcome
+    }
+
+    @Test
+    fun `parallel validation matches sequential validation`() {
+        val sequential = validateWith(parallelism = 1)
+        val parallel = validateWith(parallelism = 4)
+        assertThat(sequential.messages)
+            .anyMatch { it.contains("Class is not allowed to implement toDJVMString()") }
+        assertThat(sequential.classNames)
+            .contains(nameOf<ValidateAll>(), nameOf<ValidateFirst>(), nameOf<ValidateSecond>(), nameOf<ValidateEvil>())
+
+        assertThat(parallel.classNames).isEqualTo(sequential.classNames.sorted())
+        assertThat(parallel.messages).isEqualTo(sequential.messages)
+        assertThat(parallel.references).isEqualTo(sequential.references)
+        assertThat(parallel.classOrigins.keys).isEqualTo(sequential.classOrigins.keys)
+        for ((name, origins) in parallel.classOrigins) {
+            assertThat(origins).containsExactlyInAnyOrderElementsOf(sequential.classOrigins[name])
+        }
+
+        // The threads may record each class's origins in any order,
+        // but the concurrent context must always iterate them the same way.
+        assertThat(validateWith(parallelism = 4).classOrigins).isEqualTo(parallel.classOrigins)
+    }
+
+    class ValidateAll : Function<Int, String> {
+        override fun apply(input: Int): String {
+            return ValidateFirst().apply(input) + ValidateSecond().apply(input) + ValidateEvil().apply(input)
+        }
+    }
+
+    class ValidateFirst : Function<Int, String> {
+        override fun apply(input: Int): String = ValidateSecond().apply(input + 1)
+    }
+
+    class ValidateSecond : Function<Int, String> {
+        override fun apply(input: Int): String = input.toString()
+    }
+
+    class ValidateEvil : Function<Int, String> {
+        override fun apply(input: Int): String = toDJVMString()
+
+        fun toDJVMString(): String = "Victory is mine!"
+    }
+
     @Test
     fun `can load and execute code that uses IO`() = sandbox {
         val taskFactory = classLoader.createTypedTaskFactory()
@@ -0,0 +1,18 @@
+package net.corda.djvm.execution
+
+/**
+ * This file's facade class only copies another class's static
+ * value into its static field, and so registers for a snapshot
+ * reset. But the sandbox cannot restore a string from a snapshot,
+ * and so must still replay its reset method.
+ */
+internal var snapshotName: String = SnapshotConstants.NAME
+
+/**
+ * Initialising this object creates its instance,
+ * and so the sandbox must replay its reset method.
+ */
+object SnapshotConstants {
+    @JvmField
+    val NAME = "Snapshot"
+}
@@ -0,0 +1,183 @@
+package net.corda.djvm.execution
+
+import net.corda.djvm.SandboxType.KOTLIN
+import net.corda.djvm.TestBase
+import net.corda.djvm.execution.StackTraceMode.EAGER
+import net.corda.djvm.execution.StackTraceMode.LAZY
+import net.corda.djvm.execution.StackTraceMode.NONE
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.function.Consumer
+import java.util.function.Function
+
+class StackTraceModeTest : TestBase(KOTLIN) {
+    private class Outcome(
+        val caughtTrace: String,
+        val escapedTrace: List<StackTraceElement>,
+        val throwCost: Long,
+        val allocationCost: Long
+    )
+
+    private fun runWith(mode: StackTraceMode): Outcome {
+        return runWith(mode, CatchException::class.java, ThrowException::class.java, IllegalStateException::class.java, "Bottom")
+    }
+
+    private fun runCustomWith(mode: StackTraceMode): Outcome {
+        return runWith(
+            mode, CatchCustomException::class.java, ThrowCustomException::class.java,
+            RuntimeException::class.java, "sandbox.${StackTraceException::class.java.name} -> Bottom"
+        )
+    }
+
+    private fun runWith(
+        mode: StackTraceMode,
+        catchTask: Class<out Function<Int, String>>,
+        throwTask: Class<out Function<Int, String>>,
+        escapedType: Class<out RuntimeException>,
+        escapedMessage: String
+    ): Outcome {
+        lateinit var outcome: Outcome
+        create(
+            options = Consumer { options ->
+                options.setStackTraceMode(mode)
+            },
+            action = Consumer { ctx ->
+                sandbox(ctx, Consumer {
+                    val taskFactory = ctx.classLoader.createTypedTaskFactory()
+                    val caughtTrace = taskFactory.create(catchTask).apply(3)
+                    val escaped = assertThrows<RuntimeException> {
+                        taskFactory.create(throwTask).apply(3)
+                    }
+                    assertThat(escaped)
+                        .isInstanceOf(escapedType)
+                        .hasMessage(escapedMessage)
+                    outcome = Outcome(
+                        caughtTrace = caughtTrace,
+                        escapedTrace = escaped.stackTrace.toList(),
+                        throwCost = ctx.runtimeCosts.throwCost.value,
+                        allocationCost = ctx.runtimeCosts.allocationCost.value
+                    )
+                })
+            }
+        )
+        return outcome
+    }
+
+    @Test
+    fun `lazy stack traces match eager ones`() {
+        val eager = runWith(EAGER)
+        val lazy = runWith(LAZY)
+        assertThat(eager.caughtTrace).contains(".recurse")
+        assertThat(lazy.caughtTrace).isEqualTo(eager.caughtTrace)
+        assertThat(eager.escapedTrace).isNotEmpty
+        assertThat(lazy.escapedTrace).isEqualTo(eager.escapedTrace)
+    }
+
+    @Test
+    fun `stack traces can be disabled`() {
+        val none = runWith(NONE)
+        assertThat(none.caughtTrace).isEmpty()
+        assertThat(none.escapedTrace).isEmpty()
+    }
+
+    @Test
+    fun `stack trace mode does not affect costs`() {
+        val eager = runWith(EAGER)
+        val lazy = runWith(LAZY)
+        assertThat(lazy.throwCost).isEqualTo(eager.throwCost)
+        assertThat(lazy.allocationCost).isEqualTo(eager.allocationCost)
+
+        // The task has less to format without a stack trace,
+        // but throwing its exceptions still costs the same.
+        val none = runWith(NONE)
+        assertThat(none.throwCost).isEqualTo(eager.throwCost)
+    }
+
+    /*
+     * The sandbox creates a JVM exception whenever it throws an exception
+     * that it maps to a JVM class, such as IllegalStateException. Only its
+     * own exception classes defer converting their stack traces.
+     */
+    @Test
+    fun `lazy stack traces of sandboxed exceptions match eager ones`() {
+        val eager = runCustomWith(EAGER)
+        val lazy = runCustomWith(LAZY)
+        assertThat(eager.caughtTrace)
+            .contains("CatchCustomException.recurse")
+            .contains("CatchCustomException.apply")
+        assertThat(lazy.caughtTrace).isEqualTo(eager.caughtTrace)
+        assertThat(eager.escapedTrace)
+            .anyMatch { it.className.endsWith(ThrowCustomException::class.java.name) && it.methodName == "apply" }
+        assertThat(lazy.escapedTrace).isEqualTo(eager.escapedTrace)
+        assertThat(lazy.throwCost).isEqualTo(eager.throwCost)
+        assertThat(lazy.allocationCost).isEqualTo(eager.allocationCost)
+    }
+
+    @Test
+    fun `stack traces of sandboxed exceptions can be disabled`() {
+        val eager = runCustomWith(EAGER)
+        val none = runCustomWith(NONE)
+        assertThat(none.caughtTrace).isEmpty()
+        assertThat(none.escapedTrace).isEmpty()
+        assertThat(none.throwCost).isEqualTo(eager.throwCost)
+    }
+
+    class CatchException : Function<Int, String> {
+        override fun apply(depth: Int): String {
+            return try {
+                recurse(depth)
+            } catch (e: IllegalStateException) {
+                e.stackTrace.joinToString(separator = "\n") { "${it.className}.${it.methodName}" }
+            }
+        }
+
+        private fun recurse(depth: Int): String {
+            return if (depth == 0) {
+                throw IllegalStateException("Bottom")
+            } else {
+                recurse(depth - 1)
+            }
+        }
+    }
+
+    class ThrowException : Function<Int, String> {
+        override fun apply(depth: Int): String {
+            return if (depth == 0) {
+                throw IllegalStateException("Bottom")
+            } else {
+                apply(depth - 1)
+            }
+        }
+    }
+
+    class CatchCustomException : Function<Int, String> {
+        override fun apply(depth: Int): String {
+            return try {
+                recurse(depth)
+            } catch (e: StackTraceException) {
+                e.stackTrace.joinToString(separator = "\n") { "${it.className}.${it.methodName}" }
+            }
+        }
+
+        private fun recurse(depth: Int): String {
+            return if (depth == 0) {
+                throw StackTraceException("Bottom")
+            } else {
+                recurse(depth - 1)
+            }
+        }
+    }
+
+    class ThrowCustomException : Function<Int, String> {
+        override fun apply(depth: Int): String {
+            return if (depth == 0) {
+                throw StackTraceException("Bottom")
+            } else {
+                apply(depth - 1)
+            }
+        }
+    }
+
+    class StackTraceException(message: String) : RuntimeException(message)
+}
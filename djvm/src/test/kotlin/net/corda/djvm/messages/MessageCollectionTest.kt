@@ -0,0 +1,82 @@
+package net.corda.djvm.messages
+
+import net.corda.djvm.analysis.SourceLocation
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class MessageCollectionTest {
+    private fun location(className: String, memberName: String, lineNumber: Int): SourceLocation {
+        return SourceLocation.Builder(className)
+            .withSourceFile("Example.java")
+            .withMemberName(memberName)
+            .withDescriptor("()V")
+            .withLineNumber(lineNumber)
+            .build()
+    }
+
+    @Test
+    fun `messages are sorted and de-duplicated`() {
+        val messages = MessageCollection(Severity.INFORMATIONAL, emptyList())
+        val warning = Message("Careful", Severity.WARNING, location("com/example/A", "run", 20))
+        val error = Message("Broken", Severity.ERROR, location("com/example/A", "run", 30))
+        val info = Message("Note", Severity.INFORMATIONAL, location("com/example/A", "run", 10))
+        messages.addAll(listOf(warning, info, error, warning))
+        messages.add(Message("Careful", Severity.WARNING, location("com/example/A", "run", 40)))
+
+        assertThat(messages.sorted()).containsExactly(error, warning, info)
+        assertThat(messages.count).isEqualTo(3)
+        assertThat(messages.statistics).containsEntry(Severity.WARNING, 1)
+        assertThat(messages.messagesFor("com/example/A", "run", "()V")).hasSize(4)
+    }
+
+    @Test
+    fun `concurrent collection always keeps the same duplicate`() {
+        val first = Message("Careful", Severity.WARNING, location("com/example/A", "run", 20))
+        val second = Message("Careful", Severity.WARNING, location("com/example/A", "run", 10))
+
+        val forwards = MessageCollection(Severity.INFORMATIONAL, emptyList(), true)
+        forwards.addAll(listOf(first, second))
+        val backwards = MessageCollection(Severity.INFORMATIONAL, emptyList(), true)
+        backwards.addAll(listOf(second, first))
+
+        assertThat(forwards.sorted()).containsExactly(second)
+        assertThat(backwards.sorted()).containsExactly(second)
+    }
+
+    @Test
+    fun `concurrent collection matches sequential collection`() {
+        val severities = listOf(Severity.ERROR, Severity.WARNING, Severity.INFORMATIONAL)
+        val all = (1..200).map { line ->
+            Message("Problem ${line % 7}", severities[line % 3], location("com/example/C${line % 5}", "run", line))
+        }
+        val sequential = MessageCollection(Severity.INFORMATIONAL, emptyList())
+        sequential.addAll(all)
+
+        val concurrent = MessageCollection(Severity.INFORMATIONAL, emptyList(), true)
+        val pool = Executors.newFixedThreadPool(4)
+        try {
+            all.shuffled().chunked(25).map { chunk ->
+                pool.submit(Callable { concurrent.addAll(chunk) })
+            }.forEach { it.get() }
+        } finally {
+            pool.shutdown()
+        }
+
+        assertThat(concurrent.sorted()).isEqualTo(sequential.sorted())
+        assertThat(concurrent.count).isEqualTo(sequential.count)
+        assertThat(concurrent.statistics).isEqualTo(sequential.statistics)
+    }
+
+    @Test
+    fun `messages below the minimum severity are not accepted`() {
+        val messages = MessageCollection(Severity.WARNING, listOf("com/example/"))
+        assertThat(messages.accepts(Severity.INFORMATIONAL, "com/example/A")).isFalse()
+        assertThat(messages.accepts(Severity.ERROR, "org/example/A")).isFalse()
+        assertThat(messages.accepts(Severity.ERROR, "com/example/A")).isTrue()
+
+        messages.add(Message("Note", Severity.INFORMATIONAL, location("com/example/A", "run", 10)))
+        assertThat(messages.isEmpty()).isTrue()
+    }
+}
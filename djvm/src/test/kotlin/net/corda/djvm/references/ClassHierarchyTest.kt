@@ -165,6 +165,24 @@ class ClassHierarchyTest {
                 .hasFieldOrPropertyWithValue("descriptor", "([B)V")
     }
 
+    @Test
+    fun `can derive inherited members from ancestors added after their descendants`() {
+        val clazz3 = clazzWithSuper<ThirdClass, SecondClass>()
+        classes.add(clazz3)
+        assertThat(classes.getMember(clazz3.name, "method", "()V")).isNull()
+
+        val clazz2 = clazzWithSuper<SecondClass, FirstClass>()
+        classes.add(clazz2)
+        assertThat(classes.getMember(clazz3.name, "method", "()V")).isNull()
+
+        val clazz1 = clazz<FirstClass>()
+                .withMember("method", "()V")
+        classes.add(clazz1)
+        assertThat(classes.getMember(clazz3.name, "method", "()V"))
+                .isNotNull
+                .hasFieldOrPropertyWithValue("className", clazz1.name)
+    }
+
     private open class FirstClass
 
     private open class SecondClass : FirstClass()
@@ -0,0 +1,46 @@
+package net.corda.djvm.references
+
+import net.corda.djvm.analysis.SourceLocation
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class ReferenceMapTest {
+    private val classLocation = SourceLocation.Builder("com/example/Caller").build()
+    private val methodLocation = SourceLocation.Builder("com/example/Caller")
+        .withMemberName("call")
+        .withDescriptor("()V")
+        .withLineNumber(10)
+        .build()
+    private val classReference = ClassReference("com/example/Target")
+    private val memberReference = MemberReference("com/example/Target", "target", "()V")
+
+    @Test
+    fun `can find references from a class and its members`() {
+        val references = ReferenceMap()
+        references.add(classReference, classLocation)
+        references.add(memberReference, methodLocation)
+        references.add(memberReference, methodLocation)
+
+        assertThat(references.numberOfReferences).isEqualTo(2)
+        assertThat(references.locationsFromReference(memberReference)).containsExactly(methodLocation)
+        assertThat(references.referencesFromLocation("com/example/Caller")).containsExactly(
+            ReferenceWithLocation(classLocation, classReference),
+            ReferenceWithLocation(methodLocation, memberReference)
+        )
+        assertThat(references.referencesFromLocation("com/example/Caller", "call", "()V")).containsExactly(
+            ReferenceWithLocation(methodLocation, memberReference)
+        )
+        assertThat(references.referencesFromLocation("com/example/Caller", "other", "()V")).isEmpty()
+        assertThat(references.referencesFromLocation("com/example/Target")).isEmpty()
+    }
+
+    @Test
+    fun `can find references added after a lookup`() {
+        val references = ReferenceMap(isConcurrent = true)
+        references.add(classReference, classLocation)
+        assertThat(references.referencesFromLocation("com/example/Caller")).hasSize(1)
+
+        references.add(memberReference, methodLocation)
+        assertThat(references.referencesFromLocation("com/example/Caller")).hasSize(2)
+    }
+}
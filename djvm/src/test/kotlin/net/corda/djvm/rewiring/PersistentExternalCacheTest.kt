@@ -0,0 +1,124 @@
+package net.corda.djvm.rewiring
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.APPEND
+
+class PersistentExternalCacheTest {
+    private fun keyFor(sourceDir: Path): ByteCodeKey {
+        val sourceJar = sourceDir.resolve("source.jar")
+        if (!Files.exists(sourceJar)) {
+            Files.write(sourceJar, byteArrayOf(0))
+        }
+        return ByteCodeKey("sandbox.com.example.Test", sourceJar.toUri().toString())
+    }
+
+    @Test
+    fun testEntriesSurviveReopening(@TempDir cacheDir: Path) {
+        val cacheFile = cacheDir.resolve("djvm.cache")
+        val key = keyFor(cacheDir)
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            cache[key] = ByteCode(byteArrayOf(1, 2, 3), null)
+        }
+
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            assertThat(cache).hasSize(1)
+            assertArrayEquals(byteArrayOf(1, 2, 3), cache[key]?.bytes)
+        }
+    }
+
+    @Test
+    fun testChangedFingerprintDiscardsEntries(@TempDir cacheDir: Path) {
+        val cacheFile = cacheDir.resolve("djvm.cache")
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            cache[keyFor(cacheDir)] = ByteCode(byteArrayOf(1, 2, 3), null)
+        }
+
+        PersistentExternalCache(cacheFile, "different").use { cache ->
+            assertThat(cache).isEmpty()
+        }
+    }
+
+    @Test
+    fun testTruncatedRecordIsDiscarded(@TempDir cacheDir: Path) {
+        val cacheFile = cacheDir.resolve("djvm.cache")
+        val key = keyFor(cacheDir)
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            cache[key] = ByteCode(byteArrayOf(1, 2, 3), null)
+        }
+        val validSize = Files.size(cacheFile)
+
+        // Simulate a crash half-way through writing a record.
+        Files.write(cacheFile, byteArrayOf(0, 0, 0, 100, 1, 2), APPEND)
+
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            assertThat(cache).hasSize(1)
+            assertArrayEquals(byteArrayOf(1, 2, 3), cache[key]?.bytes)
+        }
+        assertEquals(validSize, Files.size(cacheFile))
+    }
+
+    @Test
+    fun testRemovedEntriesStayRemoved(@TempDir cacheDir: Path) {
+        val cacheFile = cacheDir.resolve("djvm.cache")
+        val key = keyFor(cacheDir)
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            cache[key] = ByteCode(byteArrayOf(1, 2, 3), null)
+            cache.remove(key)
+        }
+
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            assertNull(cache[key])
+        }
+    }
+
+    @Test
+    fun testModifiedSourceDiscardsEntries(@TempDir cacheDir: Path) {
+        val cacheFile = cacheDir.resolve("djvm.cache")
+        val key = keyFor(cacheDir)
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            cache[key] = ByteCode(byteArrayOf(1, 2, 3), null)
+        }
+
+        Files.write(cacheDir.resolve("source.jar"), byteArrayOf(1, 2), APPEND)
+
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            assertThat(cache).isEmpty()
+        }
+    }
+
+    @Test
+    fun testUnknownSourcesAreNotCached(@TempDir cacheDir: Path) {
+        val cacheFile = cacheDir.resolve("djvm.cache")
+        val key = ByteCodeKey("sandbox.com.example.Test", "file:/does/not/exist/")
+        PersistentExternalCache(cacheFile, FINGERPRINT).use { cache ->
+            assertNull(cache.put(key, ByteCode(byteArrayOf(1, 2, 3), null)))
+            assertNull(cache[key])
+        }
+    }
+
+    @Test
+    fun testLeastRecentlyUsedEntriesAreEvicted(@TempDir cacheDir: Path) {
+        val cacheFile = cacheDir.resolve("djvm.cache")
+        val source = keyFor(cacheDir).source
+        val maxBytes = 64L * 1024
+        PersistentExternalCache(cacheFile, FINGERPRINT, maxBytes).use { cache ->
+            for (i in 0 until 20) {
+                cache[ByteCodeKey("sandbox.Class$i", source)] = ByteCode(ByteArray(8 * 1024), null)
+            }
+            assertThat(Files.size(cacheFile)).isLessThanOrEqualTo(maxBytes)
+            assertThat(cache).containsKey(ByteCodeKey("sandbox.Class19", source))
+            assertThat(cache).doesNotContainKey(ByteCodeKey("sandbox.Class0", source))
+        }
+    }
+
+    private companion object {
+        private const val FINGERPRINT = "test"
+    }
+}
@@ -120,6 +120,34 @@ class SourceClassLoaderTest {
         }
     }
 
+    @Test
+    fun `child loader reuses headers cached by its parent`() {
+        UserPathSource(arrayOf(Action::class.java.protectionDomain.codeSource.location)).use { parentSource ->
+            val parentLoader = SourceClassLoaderImpl(classResolver, parentSource)
+            val action = parentLoader.loadClassHeader(Action::class.java.name)
+            val parentMisses = parentLoader.headerCacheMisses
+            val parentHits = parentLoader.headerCacheHits
+
+            UserPathSource(arrayOf(ExampleAction::class.java.protectionDomain.codeSource.location)).use { childSource ->
+                val childLoader = SourceClassLoaderImpl(classResolver, childSource, null, parentLoader)
+
+                val example = childLoader.loadClassHeader(ExampleAction::class.java.name)
+                assertThat(example.interfaces).containsExactly(action)
+                assertThat(example.interfaces.single()).isSameAs(action)
+                assertEquals(1L, childLoader.headerCacheMisses)
+                assertEquals(0L, childLoader.headerCacheHits)
+
+                // Both java.lang.Object and Action were already cached by the parent.
+                assertEquals(parentMisses, parentLoader.headerCacheMisses)
+                assertEquals(parentHits + 2, parentLoader.headerCacheHits)
+
+                assertThat(childLoader.loadClassHeader(ExampleAction::class.java.name)).isSameAs(example)
+                assertEquals(1L, childLoader.headerCacheMisses)
+                assertEquals(1L, childLoader.headerCacheHits)
+            }
+        }
+    }
+
     @Test
     fun `test interfaces are assignable to interfaces`() {
         UserPathSource(arrayOf(Action::class.java.protectionDomain.codeSource.location)).use { parentSource ->